@@ -5,6 +5,8 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.jdt.core.Flags;
@@ -112,7 +114,18 @@ public class JUnitCodeMiningProvider extends AbstractCodeMiningProvider {
 				// TODO: what should we done when there are some errors?
 			}
 			return null;
-		});
+		}, getCodeMiningExecutor());
+	}
+
+	/**
+	 * Returns the executor given by the context to provide and resolve code minings, and the
+	 * common pool otherwise.
+	 * 
+	 * @return the executor to provide and resolve code minings.
+	 */
+	Executor getCodeMiningExecutor() {
+		Executor executor = super.getAdapter(Executor.class);
+		return executor != null ? executor : ForkJoinPool.commonPool();
 	}
 
 	private void collectCodeMinings(ITypeRoot unit, IJavaElement[] elements, List<ICodeMining> minings,
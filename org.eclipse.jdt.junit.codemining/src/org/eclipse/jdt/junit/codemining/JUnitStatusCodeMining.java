@@ -73,7 +73,7 @@ public class JUnitStatusCodeMining extends AbstractJavaCodeMining {
 	protected CompletableFuture<Void> doResolve(ITextViewer viewer, IProgressMonitor monitor) {
 		return CompletableFuture.runAsync(() -> {
 			this.testCaseElement = (TestCaseElement) testRegistry.findTestCase((IMethod) getElement());
-		});
+		}, ((JUnitCodeMiningProvider) getProvider()).getCodeMiningExecutor());
 	}
 
 	@Override
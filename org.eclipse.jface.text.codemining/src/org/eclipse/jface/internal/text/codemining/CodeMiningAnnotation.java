@@ -11,17 +11,27 @@
 package org.eclipse.jface.internal.text.codemining;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 import org.eclipse.swt.custom.StyledText;
 import org.eclipse.swt.graphics.Color;
+import org.eclipse.swt.graphics.Font;
 import org.eclipse.swt.graphics.GC;
+import org.eclipse.swt.graphics.Image;
 
 import org.eclipse.core.runtime.IProgressMonitor;
 
 import org.eclipse.jface.text.ITextViewer;
 import org.eclipse.jface.text.Position;
+import org.eclipse.jface.text.codemining.CodeMiningProviderPolicy;
 import org.eclipse.jface.text.codemining.ICodeMining;
+import org.eclipse.jface.text.codemining.ICodeMiningProvider;
 import org.eclipse.jface.text.source.ISourceViewer;
 import org.eclipse.jface.text.source.inlined.LineHeaderAnnotation;
 
@@ -32,22 +42,144 @@ import org.eclipse.jface.text.source.inlined.LineHeaderAnnotation;
  */
 public class CodeMiningAnnotation extends LineHeaderAnnotation {
 
-	private static final String SEPARATOR= " | "; //$NON-NLS-1$
+	private static final ICodeMining[] NO_MININGS= new ICodeMining[0];
 
-	private final List<ICodeMining> fMinings;
+	/**
+	 * The code minings of this annotation. The array is never modified, it is replaced by
+	 * {@link #update(List, IProgressMonitor)} so that the draw never copies it and never races with
+	 * the update.
+	 */
+	private volatile ICodeMining[] fMinings;
+
+	/**
+	 * The provider of the code mining manager which has collected each code mining, by code mining.
+	 */
+	private volatile Map<ICodeMining, ICodeMiningProvider> fOwners= Collections.emptyMap();
+
+	/**
+	 * The previous labels drawn instead of the unresolved code minings while they are resolving,
+	 * by code mining.
+	 */
+	private volatile Map<ICodeMining, String> fStaleLabels= Collections.emptyMap();
+
+	/**
+	 * true if the previous labels are drawn greyed out and false otherwise.
+	 */
+	private volatile boolean fGreyStaleLabels;
+
+	/**
+	 * The pending resolve futures to which this annotation is subscribed, by code mining. A code
+	 * mining is subscribed once while its resolve is pending.
+	 */
+	private final Map<ICodeMining, CompletableFuture<Void>> fSubscriptions= Collections
+			.synchronizedMap(new IdentityHashMap<>());
 
 	private ITextViewer fViewer;
 
-	public CodeMiningAnnotation(Position position, ISourceViewer viewer) {
+	private final CodeMiningResolveScheduler fScheduler;
+
+	private final CodeMiningImageCache fImageCache;
+
+	/**
+	 * The layout of the code minings, or <code>null</code> if it must be rebuilt.
+	 */
+	private volatile CodeMiningLayout fLayout;
+
+	public CodeMiningAnnotation(Position position, ISourceViewer viewer, CodeMiningResolveScheduler scheduler,
+			CodeMiningImageCache imageCache) {
 		super(position, viewer.getTextWidget());
-		fMinings= new ArrayList<>();
+		fMinings= NO_MININGS;
 		this.fViewer= viewer;
+		this.fScheduler= scheduler;
+		this.fImageCache= imageCache;
 	}
 
 	public void update(List<ICodeMining> minings, IProgressMonitor monitor) {
-		disposeMinings();
-		minings.stream().forEach(m -> m.setProgressMonitor(monitor));
-		fMinings.addAll(minings);
+		update(minings, Collections.emptyMap(), Collections.emptyMap(), false, monitor);
+	}
+
+	/**
+	 * Update the code minings of this annotation. The given previous labels are drawn instead of
+	 * the unresolved code minings until they are resolved, so that the annotation doesn't flicker
+	 * while the code minings are resolving.
+	 *
+	 * @param minings the code minings of this annotation
+	 * @param owners the provider of the code mining manager which has collected each code mining
+	 * @param staleLabels the previous labels of the unresolved code minings, by code mining
+	 * @param greyStaleLabels true to draw the previous labels greyed out
+	 * @param monitor the progress monitor of the refresh
+	 */
+	public void update(List<ICodeMining> minings, Map<ICodeMining, ICodeMiningProvider> owners,
+			Map<ICodeMining, String> staleLabels, boolean greyStaleLabels, IProgressMonitor monitor) {
+		ICodeMining[] oldMinings= fMinings;
+		ICodeMining[] newMinings= minings.toArray(new ICodeMining[minings.size()]);
+		Map<ICodeMining, ICodeMiningProvider> newOwners= new IdentityHashMap<>();
+		Map<ICodeMining, String> oldStaleLabels= fStaleLabels;
+		Map<ICodeMining, String> newStaleLabels= new IdentityHashMap<>();
+		for (ICodeMining mining : newMinings) {
+			mining.setProgressMonitor(monitor);
+			ICodeMiningProvider owner= owners.get(mining);
+			if (owner != null) {
+				newOwners.put(mining, owner);
+			}
+			if (!mining.isResolved()) {
+				// a kept code mining keeps its previous label until it is resolved.
+				String label= staleLabels.get(mining);
+				if (label == null) {
+					label= oldStaleLabels.get(mining);
+				}
+				if (label != null) {
+					newStaleLabels.put(mining, label);
+				}
+			}
+		}
+		// the previous labels are set before the code minings which rebuild the layout.
+		fOwners= newOwners.isEmpty() ? Collections.emptyMap() : newOwners;
+		fStaleLabels= newStaleLabels.isEmpty() ? Collections.emptyMap() : newStaleLabels;
+		fGreyStaleLabels= greyStaleLabels;
+		fMinings= newMinings;
+		fLayout= null;
+		// Dispose the minings which are not kept.
+		Set<ICodeMining> kept= Collections.newSetFromMap(new IdentityHashMap<>());
+		kept.addAll(minings);
+		for (ICodeMining mining : oldMinings) {
+			if (!kept.contains(mining)) {
+				mining.dispose();
+			}
+		}
+	}
+
+	/**
+	 * Returns the code minings of this annotation.
+	 *
+	 * @return the code minings of this annotation.
+	 */
+	List<ICodeMining> getMinings() {
+		return Collections.unmodifiableList(Arrays.asList(fMinings));
+	}
+
+	/**
+	 * Returns the provider of the code mining manager which has collected the given code mining. It
+	 * is the provider of the code mining when the manager has no delegate provider.
+	 *
+	 * @param mining the code mining of this annotation
+	 * @return the provider of the code mining manager which has collected the given code mining.
+	 */
+	ICodeMiningProvider getOwner(ICodeMining mining) {
+		ICodeMiningProvider owner= fOwners.get(mining);
+		return owner != null ? owner : mining.getProvider();
+	}
+
+	/**
+	 * Returns the previous label drawn instead of the given unresolved code mining, or
+	 * <code>null</code> if none.
+	 *
+	 * @param mining the code mining of this annotation
+	 * @return the previous label drawn instead of the given unresolved code mining, or
+	 *         <code>null</code>.
+	 */
+	String getStaleLabel(ICodeMining mining) {
+		return mining.isResolved() ? null : fStaleLabels.get(mining);
 	}
 
 	@Override
@@ -55,38 +187,205 @@ public class CodeMiningAnnotation extends LineHeaderAnnotation {
 		super.markDeleted(deleted);
 		if (deleted) {
 			disposeMinings();
+			fImageCache.remove(this);
+		}
+	}
+
+	/**
+	 * Resolve the unresolved code minings of this annotation. A code mining whose resolve is
+	 * pending is subscribed once: the annotation is redrawn when the resolve is completed, even if
+	 * the returned future is completed before (ex: timeout).
+	 *
+	 * @return the future which is completed when the code minings are resolved.
+	 */
+	CompletableFuture<Void> resolve() {
+		ICodeMining[] minings= fMinings;
+		List<CompletableFuture<Void>> futures= new ArrayList<>(minings.length);
+		for (ICodeMining mining : minings) {
+			if (!needsResolve(mining)) {
+				continue;
+			}
+			CompletableFuture<Void> future= mining.resolve(fViewer);
+			if (future == null) {
+				continue;
+			}
+			subscribe(mining, future);
+			CodeMiningProviderPolicy policy= getPolicy(mining);
+			futures.add(policy != null ? policy.guardResolve(future) : future);
+		}
+		return CompletableFuture.allOf(futures.toArray(new CompletableFuture[futures.size()]));
+	}
+
+	/**
+	 * Resolve the given code mining of this annotation with the given batch resolve of its
+	 * provider.
+	 *
+	 * @param mining the code mining of this annotation
+	 * @param batch the future of the batch resolve of the provider of the code mining
+	 */
+	void resolve(ICodeMining mining, CompletableFuture<Void> batch) {
+		if (!needsResolve(mining)) {
+			return;
+		}
+		CompletableFuture<Void> future= mining.resolve(fViewer, batch);
+		if (future != null) {
+			subscribe(mining, future);
+		}
+	}
+
+	/**
+	 * Subscribe this annotation to the given pending resolve future of the given code mining: the
+	 * annotation is redrawn when the future is completed.
+	 *
+	 * @param mining the code mining
+	 * @param future the resolve future of the code mining
+	 */
+	private void subscribe(ICodeMining mining, CompletableFuture<Void> future) {
+		if (future.isDone()) {
+			return;
 		}
+		fSubscriptions.put(mining, future);
+		future.whenComplete((result, error) -> {
+			fSubscriptions.remove(mining);
+			redraw();
+		});
+	}
+
+	/**
+	 * Returns true if the given code mining must be resolved and false if it is resolved, if its
+	 * resolve is pending or if its provider is skipped.
+	 *
+	 * @param mining the code mining
+	 * @return true if the given code mining must be resolved and false otherwise.
+	 */
+	boolean needsResolve(ICodeMining mining) {
+		return !mining.isResolved() && !fSubscriptions.containsKey(mining) && !isSkipped(mining);
+	}
+
+	private static CodeMiningProviderPolicy getPolicy(ICodeMining mining) {
+		ICodeMiningProvider provider= mining.getProvider();
+		return provider != null ? provider.getPolicy() : null;
+	}
+
+	/**
+	 * Returns true if the given code mining must not be resolved because the circuit breaker of its
+	 * provider is open and false otherwise.
+	 *
+	 * @param mining the code mining
+	 * @return true if the given code mining must not be resolved and false otherwise.
+	 */
+	static boolean isSkipped(ICodeMining mining) {
+		CodeMiningProviderPolicy policy= getPolicy(mining);
+		return policy != null && policy.isOpen();
+	}
+
+	/**
+	 * Release the resolved content of the code minings of this annotation. They will be resolved
+	 * again when the annotation comes back into view.
+	 */
+	void release() {
+		for (ICodeMining mining : fMinings) {
+			mining.release();
+		}
+	}
+
+	/**
+	 * Returns true if a code mining of this annotation must be resolved and false if they are
+	 * resolved, if their resolve is pending or if their provider is skipped.
+	 *
+	 * @return true if a code mining of this annotation must be resolved and false otherwise.
+	 */
+	boolean needsResolve() {
+		for (ICodeMining mining : fMinings) {
+			if (needsResolve(mining)) {
+				return true;
+			}
+		}
+		return false;
 	}
 
 	private void disposeMinings() {
-		fMinings.stream().forEach(ICodeMining::dispose);
-		fMinings.clear();
+		ICodeMining[] minings= fMinings;
+		fMinings= NO_MININGS;
+		fOwners= Collections.emptyMap();
+		fStaleLabels= Collections.emptyMap();
+		fLayout= null;
+		for (ICodeMining mining : minings) {
+			mining.dispose();
+		}
 	}
 
 	@Override
 	public void draw(GC gc, StyledText textWidget, int offset, int length, Color color, int x, int y) {
-		gc.setForeground(color);
-		gc.setBackground(textWidget.getBackground());
-		List<ICodeMining> minings= new ArrayList<>(fMinings);
-		int nbDraw= 0;
-		int separatorWidth= -1;
-		for (ICodeMining mining : minings) {
-			if (!mining.isResolved()) {
-				// Don't draw mining which is not resolved
-				// then redraw the annotation when mining is ready.
-				mining.resolve(fViewer).thenRun(() -> this.redraw());
-				continue;
-			}
-			if (nbDraw > 0) {
-				gc.drawText(SEPARATOR, x, y);
-				if (separatorWidth == -1) {
-					separatorWidth= gc.stringExtent(SEPARATOR).x;
+		CodeMiningLayout layout= getLayout(gc.getFont());
+		if (fImageCache.isEnabled() && layout.isMeasured() && !layout.hasUnresolved()) {
+			// all code minings are resolved, draw the cached image of their content.
+			CodeMiningImageCache.ImageKey key= new CodeMiningImageCache.ImageKey(layout.getLabelsKey(),
+					gc.getFont(), color, textWidget.getBackground(), textWidget.getMonitor().getZoom());
+			Image image= fImageCache.get(this, key);
+			if (image == null) {
+				image= render(layout, gc, textWidget, color);
+				if (image != null) {
+					fImageCache.put(this, key, image);
 				}
-				x+= separatorWidth;
 			}
-			x+= mining.draw(gc, textWidget, color, x, y).x;
-			nbDraw++;
+			if (image != null) {
+				gc.drawImage(image, x, y);
+				return;
+			}
+		}
+		layout.draw(gc, textWidget, color, x, y);
+		if (layout.hasUnresolved()) {
+			// the annotation is drawn, it must be resolved with the priority of visible lines.
+			fScheduler.schedule(this);
+		}
+	}
+
+	/**
+	 * Returns the layout of the code minings which can be drawn with the given font. The layout is
+	 * rebuilt when the code minings, their label or their resolve state change. The resolve of a
+	 * code mining swaps its previous label with its new label in one draw.
+	 *
+	 * @param font the font of the draw
+	 * @return the layout of the code minings.
+	 */
+	private CodeMiningLayout getLayout(Font font) {
+		ICodeMining[] minings= fMinings;
+		CodeMiningLayout layout= fLayout;
+		if (layout == null || layout.getMinings() != minings || !layout.isValid(font)) {
+			layout= new CodeMiningLayout(minings, fStaleLabels, fGreyStaleLabels);
+			fLayout= layout;
+		}
+		return layout;
+	}
+
+	/**
+	 * Render the given measured layout in an image, or returns <code>null</code> if the annotation
+	 * has no area to draw.
+	 *
+	 * @param layout the measured layout of the resolved code minings
+	 * @param gc the graphics context
+	 * @param textWidget the text widget to draw on
+	 * @param color the color of the line
+	 * @return the image of the given layout, or <code>null</code>.
+	 */
+	private Image render(CodeMiningLayout layout, GC gc, StyledText textWidget, Color color) {
+		int width= layout.getWidth();
+		int height= getHeight();
+		if (width <= 0 || height <= 0) {
+			return null;
+		}
+		Image image= new Image(textWidget.getDisplay(), width, height);
+		GC imageGC= new GC(image);
+		try {
+			imageGC.setFont(gc.getFont());
+			imageGC.setBackground(textWidget.getBackground());
+			imageGC.fillRectangle(0, 0, width, height);
+			layout.draw(imageGC, textWidget, color, 0, 0);
+		} finally {
+			imageGC.dispose();
 		}
+		return image;
 	}
 
 }
@@ -0,0 +1,269 @@
+/**
+ *  Copyright (c) 2017 Angelo ZERR.
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  Contributors:
+ *  Angelo Zerr <angelo.zerr@gmail.com> - [CodeMining] Provide CodeMining support with CodeMiningManager - Bug 527720
+ */
+package org.eclipse.jface.internal.text.codemining;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Objects;
+
+import org.eclipse.swt.graphics.Color;
+import org.eclipse.swt.graphics.Device;
+import org.eclipse.swt.graphics.Font;
+import org.eclipse.swt.graphics.Image;
+import org.eclipse.swt.widgets.Display;
+
+/**
+ * Cache of the rendered images of the {@link CodeMiningAnnotation}, so that a paint of an
+ * annotation whose content has not changed just draws an image.
+ * <p>
+ * An image is kept by annotation with the key of its content (the labels of the code minings, the
+ * font, the colors and the zoom). The images are evicted with a LRU policy when the total of their
+ * pixels exceeds the pixel budget. The cache is disabled by default, since a code mining which
+ * draws a custom content must change its label when its content changes.
+ * </p>
+ *
+ * @since 3.13
+ */
+public class CodeMiningImageCache {
+
+	/**
+	 * The default maximum number of pixels of the cached images.
+	 */
+	private static final int DEFAULT_PIXEL_BUDGET= 4 * 1024 * 1024;
+
+	/**
+	 * Key of the content of a rendered annotation.
+	 */
+	static class ImageKey {
+
+		private final String labels;
+
+		private final Font font;
+
+		private final Color foreground;
+
+		private final Color background;
+
+		private final int zoom;
+
+		ImageKey(String labels, Font font, Color foreground, Color background, int zoom) {
+			this.labels= labels;
+			this.font= font;
+			this.foreground= foreground;
+			this.background= background;
+			this.zoom= zoom;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof ImageKey)) {
+				return false;
+			}
+			ImageKey other= (ImageKey) obj;
+			return zoom == other.zoom && labels.equals(other.labels) && Objects.equals(font, other.font)
+					&& Objects.equals(foreground, other.foreground) && Objects.equals(background, other.background);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(labels, font, foreground, background, Integer.valueOf(zoom));
+		}
+	}
+
+	/**
+	 * Cached image of an annotation.
+	 */
+	private static class Entry {
+
+		final ImageKey key;
+
+		final Image image;
+
+		final int pixels;
+
+		Entry(ImageKey key, Image image) {
+			this.key= key;
+			this.image= image;
+			this.pixels= image.getBounds().width * image.getBounds().height;
+		}
+	}
+
+	/**
+	 * The cached images by annotation, in access order.
+	 */
+	private final LinkedHashMap<CodeMiningAnnotation, Entry> fEntries= new LinkedHashMap<>(16, 0.75f, true);
+
+	/**
+	 * The total of the pixels of the cached images.
+	 */
+	private long fPixels;
+
+	/**
+	 * The maximum number of pixels of the cached images.
+	 */
+	private int fPixelBudget= DEFAULT_PIXEL_BUDGET;
+
+	/**
+	 * true if the cache is enabled and false otherwise.
+	 */
+	private volatile boolean fEnabled;
+
+	/**
+	 * Returns true if the cache is enabled and false otherwise.
+	 *
+	 * @return true if the cache is enabled and false otherwise.
+	 */
+	boolean isEnabled() {
+		return fEnabled;
+	}
+
+	/**
+	 * Set whether the rendered images of the annotations are cached.
+	 *
+	 * @param enabled true to cache the rendered images of the annotations.
+	 */
+	public void setEnabled(boolean enabled) {
+		fEnabled= enabled;
+		if (!enabled) {
+			clear();
+		}
+	}
+
+	/**
+	 * Set the maximum number of pixels of the cached images.
+	 *
+	 * @param pixelBudget the maximum number of pixels of the cached images.
+	 */
+	public void setPixelBudget(int pixelBudget) {
+		List<Image> evicted;
+		synchronized (this) {
+			fPixelBudget= pixelBudget;
+			evicted= evict();
+		}
+		dispose(evicted);
+	}
+
+	/**
+	 * Returns the cached image of the given annotation if its content has the given key, and
+	 * <code>null</code> otherwise.
+	 *
+	 * @param annotation the code mining annotation
+	 * @param key the key of the content of the annotation
+	 * @return the cached image of the given annotation, or <code>null</code>.
+	 */
+	synchronized Image get(CodeMiningAnnotation annotation, ImageKey key) {
+		Entry entry= fEntries.get(annotation);
+		return entry != null && entry.key.equals(key) && !entry.image.isDisposed() ? entry.image : null;
+	}
+
+	/**
+	 * Cache the rendered image of the given annotation and evict the least recently used images
+	 * which exceed the pixel budget.
+	 *
+	 * @param annotation the code mining annotation
+	 * @param key the key of the content of the annotation
+	 * @param image the rendered image of the annotation
+	 */
+	void put(CodeMiningAnnotation annotation, ImageKey key, Image image) {
+		List<Image> evicted;
+		synchronized (this) {
+			Entry entry= new Entry(key, image);
+			Entry old= fEntries.put(annotation, entry);
+			fPixels+= entry.pixels;
+			if (old != null) {
+				fPixels-= old.pixels;
+			}
+			evicted= evict();
+			if (old != null && old.image != image) {
+				evicted.add(old.image);
+			}
+		}
+		dispose(evicted);
+	}
+
+	/**
+	 * Remove the cached image of the given annotation.
+	 *
+	 * @param annotation the code mining annotation
+	 */
+	void remove(CodeMiningAnnotation annotation) {
+		Entry entry;
+		synchronized (this) {
+			entry= fEntries.remove(annotation);
+			if (entry == null) {
+				return;
+			}
+			fPixels-= entry.pixels;
+		}
+		List<Image> evicted= new ArrayList<>(1);
+		evicted.add(entry.image);
+		dispose(evicted);
+	}
+
+	/**
+	 * Remove all cached images.
+	 */
+	public void clear() {
+		List<Image> evicted= new ArrayList<>();
+		synchronized (this) {
+			for (Entry entry : fEntries.values()) {
+				evicted.add(entry.image);
+			}
+			fEntries.clear();
+			fPixels= 0;
+		}
+		dispose(evicted);
+	}
+
+	/**
+	 * Evict the least recently used images while the pixel budget is exceeded, by keeping at least
+	 * the most recently used image.
+	 *
+	 * @return the evicted images to dispose.
+	 */
+	private List<Image> evict() {
+		List<Image> evicted= new ArrayList<>();
+		for (Iterator<Entry> iter= fEntries.values().iterator(); iter.hasNext() && fPixels > fPixelBudget
+				&& fEntries.size() > 1;) {
+			Entry entry= iter.next();
+			iter.remove();
+			fPixels-= entry.pixels;
+			evicted.add(entry.image);
+		}
+		return evicted;
+	}
+
+	/**
+	 * Dispose the given images in the UI Thread.
+	 *
+	 * @param images the images to dispose
+	 */
+	private static void dispose(List<Image> images) {
+		if (images.isEmpty()) {
+			return;
+		}
+		Device device= images.get(0).getDevice();
+		if (!(device instanceof Display) || device.isDisposed()) {
+			return;
+		}
+		Display display= (Display) device;
+		if (display.getThread() == Thread.currentThread()) {
+			images.forEach(Image::dispose);
+		} else {
+			display.asyncExec(() -> images.forEach(Image::dispose));
+		}
+	}
+}
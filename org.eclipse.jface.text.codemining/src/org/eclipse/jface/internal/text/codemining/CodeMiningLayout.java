@@ -0,0 +1,349 @@
+/**
+ *  Copyright (c) 2017 Angelo ZERR.
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  Contributors:
+ *  Angelo Zerr <angelo.zerr@gmail.com> - [CodeMining] Provide CodeMining support with CodeMiningManager - Bug 527720
+ */
+package org.eclipse.jface.internal.text.codemining;
+
+import java.util.Map;
+
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.custom.StyledText;
+import org.eclipse.swt.graphics.Color;
+import org.eclipse.swt.graphics.Font;
+import org.eclipse.swt.graphics.GC;
+
+import org.eclipse.jface.text.codemining.AbstractCodeMining;
+import org.eclipse.jface.text.codemining.ICodeMining;
+import org.eclipse.jface.text.source.inlined.FontMetricsCache;
+
+/**
+ * Composed and measured layout of the code minings of a {@link CodeMiningAnnotation}: the x
+ * offset of each code mining and of the separators are computed by the first draw, then the next
+ * draws iterate the layout without measuring the strings.
+ * <p>
+ * The layout is valid while the label and the resolve state of the code minings and the font
+ * don't change. It is used in the UI Thread.
+ * </p>
+ * <p>
+ * An unresolved code mining which has a previous label (stale-while-revalidate) is drawn with its
+ * previous label, optionally greyed out, until it is resolved.
+ * </p>
+ *
+ * @since 3.13
+ */
+class CodeMiningLayout {
+
+	/**
+	 * The separator drawn between two code minings.
+	 */
+	private static final String SEPARATOR= " | "; //$NON-NLS-1$
+
+	/**
+	 * The text drawn by {@link AbstractCodeMining#draw(GC, StyledText, Color, int, int)} when the
+	 * label is <code>null</code>.
+	 */
+	private static final String NO_LABEL= "no command"; //$NON-NLS-1$
+
+	/**
+	 * true if the code mining class draws its label with the default implementation of
+	 * {@link AbstractCodeMining#draw(GC, StyledText, Color, int, int)} and false if it draws a
+	 * custom content.
+	 */
+	private static final ClassValue<Boolean> DEFAULT_DRAW= new ClassValue<Boolean>() {
+
+		@Override
+		protected Boolean computeValue(Class<?> type) {
+			try {
+				return Boolean.valueOf(type.getMethod("draw", GC.class, StyledText.class, Color.class, int.class, //$NON-NLS-1$
+						int.class).getDeclaringClass() == AbstractCodeMining.class);
+			} catch (NoSuchMethodException e) {
+				return Boolean.FALSE;
+			}
+		}
+	};
+
+	/**
+	 * The code minings of the layout.
+	 */
+	private final ICodeMining[] fMinings;
+
+	/**
+	 * The previous labels drawn instead of the unresolved code minings, by code mining.
+	 */
+	private final Map<ICodeMining, String> fStaleLabels;
+
+	/**
+	 * true if the previous labels are drawn greyed out and false otherwise.
+	 */
+	private final boolean fGreyStaleLabels;
+
+	/**
+	 * true for each code mining drawn with its previous label greyed out.
+	 */
+	private final boolean[] fGreyed;
+
+	/**
+	 * The label of each code mining when the layout was measured.
+	 */
+	private final String[] fLabels;
+
+	/**
+	 * The resolve state of each code mining when the layout was measured.
+	 */
+	private final boolean[] fResolved;
+
+	/**
+	 * The text drawn for each code mining, or <code>null</code> if the code mining draws a custom
+	 * content.
+	 */
+	private final String[] fTexts;
+
+	/**
+	 * The x offset of each code mining, or -1 if the code mining is not drawn.
+	 */
+	private final int[] fOffsets;
+
+	/**
+	 * The x offset of the separator drawn before each code mining, or -1 if none.
+	 */
+	private final int[] fSeparatorOffsets;
+
+	/**
+	 * The font used to measure the layout.
+	 */
+	private Font fFont;
+
+	/**
+	 * true if the layout is measured and false otherwise.
+	 */
+	private boolean fMeasured;
+
+	/**
+	 * The width of the layout.
+	 */
+	private int fWidth;
+
+	/**
+	 * true if a code mining is not resolved and must be resolved.
+	 */
+	private boolean fUnresolved;
+
+	/**
+	 * The composed labels of the drawn code minings.
+	 */
+	private String fLabelsKey;
+
+	/**
+	 * Creates the layout of the given code minings.
+	 *
+	 * @param minings the code minings
+	 * @param staleLabels the previous labels drawn instead of the unresolved code minings
+	 * @param greyStaleLabels true to draw the previous labels greyed out
+	 */
+	CodeMiningLayout(ICodeMining[] minings, Map<ICodeMining, String> staleLabels, boolean greyStaleLabels) {
+		fMinings= minings;
+		fStaleLabels= staleLabels;
+		fGreyStaleLabels= greyStaleLabels;
+		fGreyed= new boolean[minings.length];
+		fLabels= new String[minings.length];
+		fResolved= new boolean[minings.length];
+		fTexts= new String[minings.length];
+		fOffsets= new int[minings.length];
+		fSeparatorOffsets= new int[minings.length];
+	}
+
+	/**
+	 * Returns true if the layout is not measured yet or if the label and the resolve state of the
+	 * code minings and the given font have not changed since the layout was measured, and false
+	 * otherwise.
+	 *
+	 * @param font the font of the draw
+	 * @return true if the layout can be used to draw the code minings with the given font and
+	 *         false otherwise.
+	 */
+	boolean isValid(Font font) {
+		if (!fMeasured) {
+			return true;
+		}
+		if (!font.equals(fFont)) {
+			return false;
+		}
+		for (int i= 0; i < fMinings.length; i++) {
+			ICodeMining mining= fMinings[i];
+			if (mining.isResolved() != fResolved[i] || mining.getLabel() != fLabels[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the code minings of the layout.
+	 *
+	 * @return the code minings of the layout.
+	 */
+	ICodeMining[] getMinings() {
+		return fMinings;
+	}
+
+	/**
+	 * Returns true if the layout is measured and false otherwise.
+	 *
+	 * @return true if the layout is measured and false otherwise.
+	 */
+	boolean isMeasured() {
+		return fMeasured;
+	}
+
+	/**
+	 * Returns true if a code mining is not resolved and must be resolved, and false otherwise.
+	 *
+	 * @return true if a code mining is not resolved and must be resolved, and false otherwise.
+	 */
+	boolean hasUnresolved() {
+		return fUnresolved;
+	}
+
+	/**
+	 * Returns the composed labels of the drawn code minings.
+	 *
+	 * @return the composed labels of the drawn code minings.
+	 */
+	String getLabelsKey() {
+		return fLabelsKey;
+	}
+
+	/**
+	 * Returns the width of the layout.
+	 *
+	 * @return the width of the layout.
+	 */
+	int getWidth() {
+		return fWidth;
+	}
+
+	/**
+	 * Draw the resolved code minings and returns the drawn width. The layout is measured by the
+	 * first draw.
+	 *
+	 * @param gc the graphics context
+	 * @param textWidget the text widget to draw on
+	 * @param color the color of the line
+	 * @param x the x position of the annotation
+	 * @param y the y position of the annotation
+	 * @return the drawn width.
+	 */
+	int draw(GC gc, StyledText textWidget, Color color, int x, int y) {
+		gc.setForeground(color);
+		gc.setBackground(textWidget.getBackground());
+		if (fMeasured) {
+			for (int i= 0; i < fMinings.length; i++) {
+				if (fOffsets[i] == -1) {
+					continue;
+				}
+				if (fSeparatorOffsets[i] != -1) {
+					gc.drawText(SEPARATOR, x + fSeparatorOffsets[i], y);
+				}
+				if (fGreyed[i]) {
+					drawGreyed(gc, textWidget, color, fTexts[i], x + fOffsets[i], y);
+				} else if (fTexts[i] != null) {
+					gc.drawText(fTexts[i], x + fOffsets[i], y);
+				} else {
+					fMinings[i].draw(gc, textWidget, color, x + fOffsets[i], y);
+				}
+			}
+			return fWidth;
+		}
+		return measure(gc, textWidget, color, x, y);
+	}
+
+	/**
+	 * Draw the resolved code minings and measure the layout.
+	 *
+	 * @param gc the graphics context
+	 * @param textWidget the text widget to draw on
+	 * @param color the color of the line
+	 * @param x the x position of the annotation
+	 * @param y the y position of the annotation
+	 * @return the drawn width.
+	 */
+	private int measure(GC gc, StyledText textWidget, Color color, int x, int y) {
+		Font font= gc.getFont();
+		StringBuilder labelsKey= new StringBuilder();
+		int width= 0;
+		int nbDraw= 0;
+		boolean unresolved= false;
+		for (int i= 0; i < fMinings.length; i++) {
+			ICodeMining mining= fMinings[i];
+			fResolved[i]= mining.isResolved();
+			fLabels[i]= mining.getLabel();
+			fTexts[i]= null;
+			fGreyed[i]= false;
+			fOffsets[i]= -1;
+			fSeparatorOffsets[i]= -1;
+			String staleLabel= null;
+			if (!fResolved[i]) {
+				// Don't draw mining which is not resolved (excepted its previous label)
+				// then redraw the annotation when mining is ready.
+				unresolved|= !CodeMiningAnnotation.isSkipped(mining);
+				staleLabel= DEFAULT_DRAW.get(mining.getClass()).booleanValue() ? fStaleLabels.get(mining) : null;
+				if (staleLabel == null) {
+					continue;
+				}
+			}
+			if (nbDraw > 0) {
+				fSeparatorOffsets[i]= width;
+				gc.drawText(SEPARATOR, x + width, y);
+				width+= FontMetricsCache.getStringWidth(font, SEPARATOR);
+			}
+			fOffsets[i]= width;
+			if (staleLabel != null) {
+				fTexts[i]= staleLabel;
+				if (fGreyStaleLabels) {
+					fGreyed[i]= true;
+					drawGreyed(gc, textWidget, color, staleLabel, x + width, y);
+				} else {
+					gc.drawText(staleLabel, x + width, y);
+				}
+				width+= FontMetricsCache.getStringWidth(font, staleLabel);
+			} else if (DEFAULT_DRAW.get(mining.getClass()).booleanValue()) {
+				String text= fLabels[i] != null ? fLabels[i] : NO_LABEL;
+				fTexts[i]= text;
+				gc.drawText(text, x + width, y);
+				width+= FontMetricsCache.getStringWidth(font, text);
+			} else {
+				width+= mining.draw(gc, textWidget, color, x + width, y).x;
+			}
+			labelsKey.append(fLabels[i] != null ? fLabels[i] : "").append('\0'); //$NON-NLS-1$
+			nbDraw++;
+		}
+		fFont= font;
+		fWidth= width;
+		fUnresolved= unresolved;
+		fLabelsKey= labelsKey.toString();
+		fMeasured= true;
+		return width;
+	}
+
+	/**
+	 * Draw the given previous label greyed out.
+	 *
+	 * @param gc the graphics context
+	 * @param textWidget the text widget to draw on
+	 * @param color the color of the line
+	 * @param text the previous label
+	 * @param x the x position of the label
+	 * @param y the y position of the label
+	 */
+	private static void drawGreyed(GC gc, StyledText textWidget, Color color, String text, int x, int y) {
+		gc.setForeground(textWidget.getDisplay().getSystemColor(SWT.COLOR_GRAY));
+		gc.drawText(text, x, y);
+		gc.setForeground(color);
+	}
+}
@@ -10,28 +10,41 @@
  */
 package org.eclipse.jface.internal.text.codemining;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedHashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
-import java.util.function.Function;
-import java.util.stream.Collectors;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 import org.eclipse.core.runtime.Assert;
 import org.eclipse.core.runtime.IProgressMonitor;
 
 import org.eclipse.jface.text.BadLocationException;
 import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.IDocumentExtension4;
+import org.eclipse.jface.text.IRegion;
 import org.eclipse.jface.text.ITextViewer;
 import org.eclipse.jface.text.IViewportListener;
 import org.eclipse.jface.text.JFaceTextUtil;
 import org.eclipse.jface.text.Position;
+import org.eclipse.jface.text.Region;
+import org.eclipse.jface.text.codemining.CancellationToken;
+import org.eclipse.jface.text.codemining.CodeMiningExecutor;
+import org.eclipse.jface.text.codemining.CodeMiningProviderPolicy;
 import org.eclipse.jface.text.codemining.ICodeMining;
 import org.eclipse.jface.text.codemining.ICodeMiningProvider;
+import org.eclipse.jface.text.reconciler.DirtyRegion;
 import org.eclipse.jface.text.source.ISourceViewer;
 import org.eclipse.jface.text.source.inlined.AbstractInlinedAnnotation;
 import org.eclipse.jface.text.source.inlined.InlinedAnnotationSupport;
@@ -58,16 +71,316 @@ public class CodeMiningManager implements Runnable {
 	 */
 	private List<ICodeMiningProvider> fCodeMiningProviders;
 
+	/**
+	 * The rank of the codemining providers used to sort code minings: the index of the provider
+	 * plus one, 0 being the rank of the code minings whose provider is unknown.
+	 */
+	private Map<ICodeMiningProvider, Integer> fProviderRanks= Collections.emptyMap();
+
 	/**
 	 * The current progress monitor.
 	 */
-	private IProgressMonitor fMonitor;
+	private volatile CancellationToken fMonitor;
+
+	/**
+	 * The region (covering whole lines) of the pending refresh of code minings, or
+	 * <code>null</code> if the pending refresh concerns the whole document.
+	 */
+	private IRegion fPendingRegion;
+
+	/**
+	 * true if a refresh of code minings is pending (not rendered) and false otherwise.
+	 */
+	private boolean fPending;
+
+	/**
+	 * true if the code minings of each provider are rendered as soon as the provider completes and
+	 * false if code minings are rendered when all providers completed.
+	 */
+	private boolean fStreaming= true;
 
 	/**
 	 * Tracker of start/end offset of visible lines.
 	 */
 	private VisibleLines visibleLines;
 
+	/**
+	 * The scheduler which resolves the code minings by priority of the visible lines.
+	 */
+	private final CodeMiningResolveScheduler fResolveScheduler;
+
+	/**
+	 * The cache of the rendered images of the code mining annotations.
+	 */
+	private final CodeMiningImageCache fImageCache= new CodeMiningImageCache();
+
+	/**
+	 * The default number of lines above and below the visible lines whose code minings are resolved
+	 * just after the code minings of the visible lines.
+	 */
+	private static final int DEFAULT_VIEWPORT_BAND= 50;
+
+	/**
+	 * The default number of lines above and below the visible lines beyond which the resolved code
+	 * minings are released in lazy mode.
+	 */
+	private static final int DEFAULT_RELEASE_BAND= 200;
+
+	/**
+	 * true if the code minings are resolved only when their lines come into view, and their
+	 * resolved content released when their lines scroll away, and false otherwise.
+	 */
+	private boolean fLazy;
+
+	/**
+	 * true if the previous label of a code mining with the same key is drawn while the code mining
+	 * is resolving, and false otherwise.
+	 */
+	private volatile boolean fStaleWhileRevalidate;
+
+	/**
+	 * true if the previous labels drawn while the code minings are resolving are greyed out, and
+	 * false otherwise.
+	 */
+	private volatile boolean fGreyStaleLabels;
+
+	/**
+	 * The maximum delay (in milliseconds) while the refresh triggers are coalesced.
+	 */
+	private static final long MAX_DEBOUNCE_DELAY= 500;
+
+	/**
+	 * The maximum time (in milliseconds) while a pending refresh absorbs the triggers of the same
+	 * inputs. After this delay, the pending refresh is considered as stalled (ex: a provider future
+	 * which never completes) and a trigger restarts the refresh.
+	 */
+	private static final long MAX_PENDING_DELAY= 10000;
+
+	/**
+	 * The timer used to start the refresh of code minings when the debounce delay is elapsed.
+	 */
+	private static ScheduledExecutorService fgDebounceTimer;
+
+	/**
+	 * true if a refresh of code minings is triggered (not started) and false otherwise.
+	 */
+	private boolean fTriggered;
+
+	/**
+	 * The region (covering whole lines) of the triggered refresh, or <code>null</code> if the
+	 * triggered refresh concerns the whole document.
+	 */
+	private IRegion fTriggeredRegion;
+
+	/**
+	 * The time (in milliseconds) of the first trigger of the triggered refresh.
+	 */
+	private long fFirstTriggerTime;
+
+	/**
+	 * The scheduled start of the triggered refresh, or <code>null</code>.
+	 */
+	private ScheduledFuture<?> fTriggeredStart;
+
+	/**
+	 * The document modification stamp when the pending refresh started.
+	 */
+	private long fPendingStamp= IDocumentExtension4.UNKNOWN_MODIFICATION_STAMP;
+
+	/**
+	 * The time (in milliseconds) when the pending refresh started.
+	 */
+	private long fPendingStartTime;
+
+	/**
+	 * The codemining providers of the pending refresh.
+	 */
+	private List<ICodeMiningProvider> fPendingProviders;
+
+	/**
+	 * The average time (in milliseconds) spent by the providers to collect the code minings, or
+	 * <code>-1</code> if it is not measured yet.
+	 */
+	private long fAverageLatency= -1;
+
+	/**
+	 * Code minings located at the same position, sorted by provider rank.
+	 */
+	private static class CodeMiningGroup {
+
+		private final int offset;
+
+		private final int length;
+
+		private final List<ICodeMining> minings= new ArrayList<>();
+
+		CodeMiningGroup(int offset, int length) {
+			this.offset= offset;
+			this.length= length;
+		}
+	}
+
+	/**
+	 * Collector of the code minings of a refresh. The code minings of each provider are rendered as
+	 * soon as the provider completes in streaming mode, and when all providers completed
+	 * otherwise. A provider which completes exceptionally is isolated: its previous code minings
+	 * are kept.
+	 */
+	private class CodeMiningCollector {
+
+		/**
+		 * The region (covering whole lines) where code minings are collected, or <code>null</code>
+		 * for the whole document.
+		 */
+		private final IRegion fRegion;
+
+		/**
+		 * The progress monitor of the refresh.
+		 */
+		private final CancellationToken fCollectorMonitor;
+
+		/**
+		 * The code minings of the providers which completed successfully.
+		 */
+		private final Map<ICodeMiningProvider, List<? extends ICodeMining>> fResults= new HashMap<>();
+
+		/**
+		 * The provider of the manager which has collected each code mining. It can differ from
+		 * {@link ICodeMining#getProvider()} when the provider of the manager is a delegate.
+		 */
+		private final Map<ICodeMining, ICodeMiningProvider> fOwners= new IdentityHashMap<>();
+
+		/**
+		 * The number of providers which have not completed.
+		 */
+		private int fRemaining;
+
+		/**
+		 * The time (in milliseconds) when the code minings started to be collected.
+		 */
+		private long fStartTime;
+
+		/**
+		 * The number of snapshots of the collected code minings which have been taken.
+		 */
+		private int fSnapshotCount;
+
+		/**
+		 * The last rendered snapshot of the collected code minings.
+		 */
+		private int fRenderedSnapshot;
+
+		/**
+		 * The lock which serializes the rendering of the snapshots. It is never held while taking
+		 * the monitor of this collector.
+		 */
+		private final Object fRenderLock= new Object();
+
+		CodeMiningCollector(IRegion region, CancellationToken monitor) {
+			fRegion= region;
+			fCollectorMonitor= monitor;
+		}
+
+		/**
+		 * Collect the code minings of the given providers.
+		 *
+		 * @param viewer the viewer
+		 * @param providers the code mining providers
+		 */
+		void collect(ITextViewer viewer, List<ICodeMiningProvider> providers) {
+			synchronized (this) {
+				fRemaining= providers.size();
+				fStartTime= System.currentTimeMillis();
+			}
+			for (ICodeMiningProvider provider : providers) {
+				CodeMiningProviderPolicy policy= provider.getPolicy();
+				if (policy != null && policy.isOpen()) {
+					// the provider reached too many deadlines, keep its previous minings while its
+					// circuit breaker is open.
+					done(provider, null, true);
+					continue;
+				}
+				CompletableFuture<List<? extends ICodeMining>> future;
+				try {
+					future= fRegion != null ? provider.provideCodeMinings(viewer, fRegion, fCollectorMonitor)
+							: provider.provideCodeMinings(viewer, fCollectorMonitor);
+				} catch (RuntimeException e) {
+					done(provider, null, true);
+					continue;
+				}
+				if (future == null) {
+					// The lack of a result
+					done(provider, Collections.emptyList(), false);
+					continue;
+				}
+				// cancel the future when the refresh is canceled
+				fCollectorMonitor.register(future);
+				if (policy != null) {
+					future= policy.guardProvide(future);
+				}
+				future.whenComplete((minings, error) -> done(provider, minings, error != null));
+			}
+		}
+
+		/**
+		 * Called when the given provider completed. The collected code minings are copied under
+		 * the monitor of this collector and rendered outside of it, since the rendering takes the
+		 * monitor of the manager which is held while canceling the collector.
+		 *
+		 * @param provider the code mining provider
+		 * @param minings the code minings of the provider
+		 * @param failed true if the provider completed exceptionally and false otherwise
+		 */
+		private void done(ICodeMiningProvider provider, List<? extends ICodeMining> minings, boolean failed) {
+			List<ICodeMining> symbols;
+			Map<ICodeMining, ICodeMiningProvider> owners;
+			Set<ICodeMiningProvider> completedProviders;
+			boolean completed;
+			int snapshot;
+			synchronized (this) {
+				fRemaining--;
+				if (fRemaining == 0 && fCollectorMonitor == fMonitor) {
+					recordLatency(System.currentTimeMillis() - fStartTime);
+				}
+				if (!failed) {
+					fResults.put(provider, minings != null ? minings : Collections.emptyList());
+					if (minings != null) {
+						for (ICodeMining mining : minings) {
+							fOwners.put(mining, provider);
+						}
+					}
+				}
+				if (!fStreaming && fRemaining > 0) {
+					return;
+				}
+				// check if request was canceled.
+				if (fCollectorMonitor.isCanceled()) {
+					return;
+				}
+				symbols= new ArrayList<>();
+				fResults.values().forEach(symbols::addAll);
+				owners= new IdentityHashMap<>(fOwners);
+				completedProviders= new HashSet<>(fResults.keySet());
+				completed= fRemaining == 0;
+				snapshot= ++fSnapshotCount;
+			}
+			synchronized (fRenderLock) {
+				if (snapshot < fRenderedSnapshot) {
+					// a more recent snapshot has already been rendered.
+					return;
+				}
+				fRenderedSnapshot= snapshot;
+				// then group code minings by lines position
+				Map<ICodeMiningProvider, Integer> providerRanks= fProviderRanks;
+				List<CodeMiningGroup> groups= goupByLines(symbols, owners, providerRanks);
+				// keep the previous code minings of the providers which have not completed or failed
+				addPreviousCodeMinings(groups, fRegion, completedProviders, owners, providerRanks);
+				// resolve and render code minings
+				renderCodeMinings(groups, owners, fRegion, fViewer, fCollectorMonitor, completed);
+			}
+		}
+	}
+
 	/**
 	 * Class to track start/end offset of visible lines.
 	 *
@@ -78,10 +391,31 @@ public class CodeMiningManager implements Runnable {
 
 		private int endOffset;
 
+		/**
+		 * The number of lines above and below the visible lines which are resolved with a higher
+		 * priority than the other lines.
+		 */
+		private int band= DEFAULT_VIEWPORT_BAND;
+
+		/**
+		 * The number of lines above and below the visible lines beyond which the resolved code
+		 * minings are released in lazy mode.
+		 */
+		private int releaseBand= DEFAULT_RELEASE_BAND;
+
+		/**
+		 * The start offset of the release band of the last viewport, or -1 if none.
+		 */
+		private int lastReleaseStart= -1;
+
+		/**
+		 * The end offset of the release band of the last viewport, or -1 if none.
+		 */
+		private int lastReleaseEnd= -1;
+
 		public VisibleLines() {
 			fViewer.getTextWidget().getDisplay().asyncExec(() -> {
-				startOffset= getInclusiveTopIndexStartOffset();
-				endOffset= getExclusiveBottomIndexEndOffset();
+				compute();
 			});
 		}
 
@@ -91,19 +425,98 @@ public class CodeMiningManager implements Runnable {
 		}
 
 		private void compute() {
-			startOffset= getInclusiveTopIndexStartOffset();
-			endOffset= getExclusiveBottomIndexEndOffset();
+			startOffset= getInclusiveTopIndexStartOffset(0);
+			endOffset= getExclusiveBottomIndexEndOffset(0);
+			int bandStart= getInclusiveTopIndexStartOffset(band);
+			int bandEnd= getExclusiveBottomIndexEndOffset(band);
+			// reprioritize the resolve of code minings with the new visible lines.
+			fResolveScheduler.setViewport(startOffset, endOffset, bandStart, bandEnd);
+			if (fLazy && bandStart != -1 && bandEnd != -1) {
+				materialize(bandStart, bandEnd, getInclusiveTopIndexStartOffset(releaseBand),
+						getExclusiveBottomIndexEndOffset(releaseBand));
+			}
+		}
+
+		/**
+		 * Resolve the code minings of the lines which come into the band and release the code
+		 * minings of the lines which have left the release band since the last viewport. Only the
+		 * annotations of those lines are looked up, so that the cost of a scroll doesn't depend on
+		 * the size of the document.
+		 *
+		 * @param bandStart the start offset of the band
+		 * @param bandEnd the end offset of the band
+		 * @param releaseStart the start offset of the release band
+		 * @param releaseEnd the end offset of the release band
+		 */
+		private void materialize(int bandStart, int bandEnd, int releaseStart, int releaseEnd) {
+			List<CodeMiningAnnotation> annotationsToResolve= new ArrayList<>();
+			for (AbstractInlinedAnnotation annotation : fInlinedAnnotationSupport.findExistingAnnotations(bandStart,
+					bandEnd - bandStart)) {
+				if (annotation instanceof CodeMiningAnnotation && !annotation.isMarkedDeleted()) {
+					annotationsToResolve.add((CodeMiningAnnotation) annotation);
+				}
+			}
+			if (lastReleaseStart != -1 && releaseStart != -1 && releaseEnd != -1) {
+				if (lastReleaseStart < releaseStart) {
+					release(lastReleaseStart, Math.min(lastReleaseEnd, releaseStart - 1));
+				}
+				if (lastReleaseEnd > releaseEnd) {
+					release(Math.max(lastReleaseStart, releaseEnd + 1), lastReleaseEnd);
+				}
+			}
+			lastReleaseStart= releaseStart;
+			lastReleaseEnd= releaseEnd;
+			fResolveScheduler.schedule(annotationsToResolve);
+		}
+
+		/**
+		 * Release the code minings of the annotations located in the given range.
+		 *
+		 * @param start the start offset of the range
+		 * @param end the end offset of the range (inclusive)
+		 */
+		private void release(int start, int end) {
+			if (start > end) {
+				return;
+			}
+			for (AbstractInlinedAnnotation annotation : fInlinedAnnotationSupport.findExistingAnnotations(start,
+					end - start)) {
+				if (annotation instanceof CodeMiningAnnotation && !annotation.isMarkedDeleted()) {
+					((CodeMiningAnnotation) annotation).release();
+				}
+			}
+		}
+
+		/**
+		 * Set the number of lines above and below the visible lines which are resolved with a
+		 * higher priority than the other lines.
+		 *
+		 * @param band the number of lines
+		 */
+		void setBand(int band) {
+			this.band= Math.max(0, band);
+		}
+
+		/**
+		 * Set the number of lines above and below the visible lines beyond which the resolved code
+		 * minings are released in lazy mode.
+		 *
+		 * @param releaseBand the number of lines
+		 */
+		void setReleaseBand(int releaseBand) {
+			this.releaseBand= Math.max(band, releaseBand);
 		}
 
 		/**
 		 * Returns the document offset of the upper left corner of the source viewer's view port,
 		 * possibly including partially visible lines.
 		 *
+		 * @param band the number of lines to add above the view port
 		 * @return the document offset if the upper left corner of the view port
 		 */
-		private int getInclusiveTopIndexStartOffset() {
+		private int getInclusiveTopIndexStartOffset(int band) {
 			if (fViewer != null && fViewer.getTextWidget() != null && !fViewer.getTextWidget().isDisposed()) {
-				int top= JFaceTextUtil.getPartialTopIndex(fViewer);
+				int top= Math.max(0, JFaceTextUtil.getPartialTopIndex(fViewer) - band);
 				try {
 					IDocument document= fViewer.getDocument();
 					return document.getLineOffset(top);
@@ -118,11 +531,12 @@ public class CodeMiningManager implements Runnable {
 		 * Returns the first invisible document offset of the lower right corner of the source
 		 * viewer's view port, possibly including partially visible lines.
 		 *
+		 * @param band the number of lines to add below the view port
 		 * @return the first invisible document offset of the lower right corner of the view port
 		 */
-		private int getExclusiveBottomIndexEndOffset() {
+		private int getExclusiveBottomIndexEndOffset(int band) {
 			if (fViewer != null && fViewer.getTextWidget() != null && !fViewer.getTextWidget().isDisposed()) {
-				int bottom= JFaceTextUtil.getPartialBottomIndex(fViewer);
+				int bottom= JFaceTextUtil.getPartialBottomIndex(fViewer) + band;
 				try {
 					IDocument document= fViewer.getDocument();
 
@@ -162,6 +576,7 @@ public class CodeMiningManager implements Runnable {
 		Assert.isNotNull(inlinedAnnotationSupport);
 		Assert.isNotNull(codeMiningProviders);
 		fViewer= viewer;
+		fResolveScheduler= new CodeMiningResolveScheduler(viewer);
 		visibleLines= new VisibleLines();
 		fViewer.addViewportListener(visibleLines);
 		fInlinedAnnotationSupport= inlinedAnnotationSupport;
@@ -174,49 +589,326 @@ public class CodeMiningManager implements Runnable {
 	 * @param codeMiningProviders the codemining providers.
 	 */
 	public void setCodeMiningProviders(ICodeMiningProvider[] codeMiningProviders) {
+		Map<ICodeMiningProvider, Integer> providerRanks= new HashMap<>(codeMiningProviders.length);
+		for (ICodeMiningProvider provider : codeMiningProviders) {
+			// dense ranks: a provider which is repeated keeps its first rank, and the ranks stay
+			// lower than the number of distinct providers plus one.
+			if (!providerRanks.containsKey(provider)) {
+				providerRanks.put(provider, providerRanks.size() + 1);
+			}
+		}
+		fProviderRanks= providerRanks;
 		fCodeMiningProviders= Arrays.asList(codeMiningProviders);
 	}
 
+	/**
+	 * Set whether the code minings of each provider are rendered as soon as the provider completes
+	 * or when all providers completed.
+	 *
+	 * @param streaming true to render the code minings of each provider as soon as it completes.
+	 */
+	public void setStreaming(boolean streaming) {
+		fStreaming= streaming;
+	}
+
+	/**
+	 * Set the number of lines above and below the visible lines whose code minings are resolved
+	 * just after the code minings of the visible lines. The code minings of the other lines are
+	 * resolved at the end.
+	 *
+	 * @param band the number of lines above and below the visible lines.
+	 */
+	public void setViewportBand(int band) {
+		visibleLines.setBand(band);
+	}
+
+	/**
+	 * Set whether the code minings are resolved only when their lines come into view (the visible
+	 * lines and the band), and their resolved content (ex: label) released when their lines scroll
+	 * away beyond the release band. This lazy mode keeps the resolved content proportional to the
+	 * viewport for large documents. The code minings, their annotations and their positions are
+	 * still collected and kept for the whole document.
+	 *
+	 * @param lazy true to resolve the code minings only when their lines come into view.
+	 */
+	public void setLazy(boolean lazy) {
+		fLazy= lazy;
+		fResolveScheduler.setLazy(lazy);
+	}
+
+	/**
+	 * Set whether the previous label of a code mining with the same provider and key is drawn while
+	 * the code mining which replaces it is resolving, instead of drawing nothing. The previous label
+	 * is swapped with the new label in one draw when the code mining is resolved.
+	 *
+	 * @param staleWhileRevalidate true to draw the previous labels while the code minings are
+	 *            resolving.
+	 */
+	public void setStaleWhileRevalidate(boolean staleWhileRevalidate) {
+		fStaleWhileRevalidate= staleWhileRevalidate;
+	}
+
+	/**
+	 * Set whether the previous labels drawn while the code minings are resolving are greyed out.
+	 *
+	 * @param greyStaleLabels true to draw the previous labels greyed out.
+	 * @see #setStaleWhileRevalidate(boolean)
+	 */
+	public void setGreyStaleLabels(boolean greyStaleLabels) {
+		fGreyStaleLabels= greyStaleLabels;
+	}
+
+	/**
+	 * Returns the cache of the rendered images of the code mining annotations. The cache is
+	 * disabled by default.
+	 *
+	 * @return the cache of the rendered images of the code mining annotations.
+	 */
+	public CodeMiningImageCache getImageCache() {
+		return fImageCache;
+	}
+
+	/**
+	 * Set the number of lines above and below the visible lines beyond which the resolved code
+	 * minings are released in lazy mode.
+	 *
+	 * @param releaseBand the number of lines above and below the visible lines.
+	 */
+	public void setReleaseBand(int releaseBand) {
+		visibleLines.setReleaseBand(releaseBand);
+	}
+
 	/**
 	 * Uninstalls this codemining manager.
 	 */
 	public void uninstall() {
+		synchronized (this) {
+			fTriggered= false;
+			if (fTriggeredStart != null) {
+				fTriggeredStart.cancel(false);
+				fTriggeredStart= null;
+			}
+			// the pending refresh is canceled, it must not absorb the next triggers.
+			fPending= false;
+			fPendingRegion= null;
+		}
 		cancel();
+		fResolveScheduler.clear();
+		fImageCache.clear();
 		fViewer.removeViewportListener(visibleLines);
 	}
 
 	/**
-	 * Collect, resolve and render the code minings of the viewer.
+	 * Trigger the collect, resolve and render of the code minings of the viewer.
 	 */
 	@Override
 	public void run() {
+		run(null);
+	}
+
+	/**
+	 * Trigger the collect, resolve and render of the code minings of the viewer which are located
+	 * in the lines of the given region. The code minings located outside those lines are kept as
+	 * they are.
+	 * <p>
+	 * This method is typically called with the {@link DirtyRegion} given by an incremental
+	 * reconciler to avoid re-collecting the code minings of the whole document for each
+	 * keystroke.
+	 * </p>
+	 * <p>
+	 * The triggers are coalesced during a debounce delay which adapts to the measured latency of
+	 * the providers, and a trigger of a region which doesn't change the inputs (document, region,
+	 * providers) of the running refresh lets it finish instead of restarting it. A trigger of the
+	 * whole document always restarts the refresh, since the data of a provider can change without
+	 * changing the document.
+	 * </p>
+	 *
+	 * @param region the damaged region, or <code>null</code> to refresh the code minings of the
+	 *            whole document.
+	 */
+	public void run(IRegion region) {
 		if (fViewer == null || fInlinedAnnotationSupport == null || fCodeMiningProviders == null
 				|| fCodeMiningProviders.size() == 0 || fViewer.getAnnotationModel() == null) {
 			return;
 		}
-		// Cancel the last progress monitor to cancel last resolve and render of code
-		// minings
-		cancel();
-		// Update the code minings
-		updateCodeMinings();
+		IRegion lineRegion= region != null ? getLineRegion(fViewer.getDocument(), region) : null;
+		synchronized (this) {
+			if (lineRegion != null && !fTriggered && isCoveredByPendingRefresh(lineRegion)) {
+				// the running refresh already collects the code minings of the same inputs.
+				return;
+			}
+			long now= System.currentTimeMillis();
+			if (!fTriggered) {
+				fTriggered= true;
+				fTriggeredRegion= lineRegion;
+				fFirstTriggerTime= now;
+			} else {
+				fTriggeredRegion= union(fTriggeredRegion, lineRegion);
+			}
+			if (fTriggeredStart != null) {
+				fTriggeredStart.cancel(false);
+				fTriggeredStart= null;
+			}
+			// debounce the triggers, without postponing the refresh more than the maximum delay.
+			long delay= Math.min(getDebounceDelay(), fFirstTriggerTime + MAX_DEBOUNCE_DELAY - now);
+			if (delay > 0) {
+				fTriggeredStart= getDebounceTimer().schedule(
+						() -> CodeMiningExecutor.getDefault().execute(this::refresh), delay, TimeUnit.MILLISECONDS);
+				return;
+			}
+		}
+		refresh();
 	}
 
 	/**
-	 * Update the code minings.
+	 * Collect, resolve and render the code minings of the triggered refresh.
 	 */
-	private void updateCodeMinings() {
-		// Refresh the code minings by using the new progress monitor.
-		fMonitor= new CancellationExceptionMonitor();
-		IProgressMonitor monitor= fMonitor;
-		// Collect the code minings for the viewer
-		getCodeMinings(fViewer, fCodeMiningProviders, monitor).thenAccept(symbols -> {
-			// check if request was canceled.
-			monitor.isCanceled();
-			// then group code minings by lines position
-			Map<Position, List<ICodeMining>> groups= goupByLines(symbols, fCodeMiningProviders);
-			// resolve and render code minings
-			renderCodeMinings(groups, fViewer, monitor);
-		});
+	private void refresh() {
+		IRegion lineRegion;
+		CancellationToken monitor;
+		CancellationToken previousMonitor;
+		synchronized (this) {
+			if (!fTriggered) {
+				return;
+			}
+			fTriggered= false;
+			fTriggeredStart= null;
+			previousMonitor= fMonitor;
+			// The canceled refresh was not rendered, merge its region with the new region.
+			lineRegion= fPending ? union(fPendingRegion, fTriggeredRegion) : fTriggeredRegion;
+			fTriggeredRegion= null;
+			fPending= true;
+			fPendingRegion= lineRegion;
+			fPendingStamp= getModificationStamp(fViewer.getDocument());
+			fPendingStartTime= System.currentTimeMillis();
+			fPendingProviders= fCodeMiningProviders;
+			// Refresh the code minings by using the new progress monitor.
+			fMonitor= new CancellationToken();
+			monitor= fMonitor;
+		}
+		// Cancel the last progress monitor to cancel last resolve and render of code minings. It
+		// is canceled outside of the monitor of the manager, since canceling its futures
+		// completes the previous collector synchronously.
+		if (previousMonitor != null) {
+			previousMonitor.cancel();
+		}
+		// Collect, resolve and render the code minings
+		new CodeMiningCollector(lineRegion, monitor).collect(fViewer, fCodeMiningProviders);
+	}
+
+	/**
+	 * Returns true if the pending refresh, which is not stalled, collects the code minings of the
+	 * given region with the same document and providers, and false otherwise.
+	 *
+	 * @param lineRegion the region (covering whole lines) to refresh.
+	 * @return true if the pending refresh collects the code minings of the given region with the
+	 *         same document and providers, and false otherwise.
+	 */
+	private boolean isCoveredByPendingRefresh(IRegion lineRegion) {
+		if (!fPending || fPendingProviders != fCodeMiningProviders
+				|| System.currentTimeMillis() - fPendingStartTime > MAX_PENDING_DELAY) {
+			return false;
+		}
+		long stamp= getModificationStamp(fViewer.getDocument());
+		if (stamp == IDocumentExtension4.UNKNOWN_MODIFICATION_STAMP || stamp != fPendingStamp) {
+			return false;
+		}
+		if (fPendingRegion == null) {
+			return true;
+		}
+		return lineRegion.getOffset() >= fPendingRegion.getOffset()
+				&& lineRegion.getOffset() + lineRegion.getLength() <= fPendingRegion.getOffset()
+						+ fPendingRegion.getLength();
+	}
+
+	/**
+	 * Returns the modification stamp of the given document, or
+	 * {@link IDocumentExtension4#UNKNOWN_MODIFICATION_STAMP} if it is unknown.
+	 *
+	 * @param document the document
+	 * @return the modification stamp of the given document.
+	 */
+	private static long getModificationStamp(IDocument document) {
+		return document instanceof IDocumentExtension4 ? ((IDocumentExtension4) document).getModificationStamp()
+				: IDocumentExtension4.UNKNOWN_MODIFICATION_STAMP;
+	}
+
+	/**
+	 * Returns the delay (in milliseconds) while the refresh triggers are coalesced: the half of the
+	 * average latency of the providers, so that fast providers are refreshed immediately and slow
+	 * providers don't throw away their work for each keystroke.
+	 *
+	 * @return the delay (in milliseconds) while the refresh triggers are coalesced.
+	 */
+	private synchronized long getDebounceDelay() {
+		return fAverageLatency < 0 ? 0 : Math.min(fAverageLatency / 2, MAX_DEBOUNCE_DELAY);
+	}
+
+	/**
+	 * Update the average latency of the providers with the given measure.
+	 *
+	 * @param latency the time (in milliseconds) spent by the providers to collect the code minings.
+	 */
+	private synchronized void recordLatency(long latency) {
+		fAverageLatency= fAverageLatency < 0 ? latency : (3 * fAverageLatency + latency) / 4;
+	}
+
+	private static synchronized ScheduledExecutorService getDebounceTimer() {
+		if (fgDebounceTimer == null) {
+			fgDebounceTimer= Executors.newSingleThreadScheduledExecutor(r -> {
+				Thread thread= new Thread(r, "CodeMining-Debounce"); //$NON-NLS-1$
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+		return fgDebounceTimer;
+	}
+
+	/**
+	 * Returns the region which covers the whole lines of the given region, or <code>null</code>
+	 * if the lines cannot be computed (in this case, the whole document must be refreshed).
+	 *
+	 * @param document the document
+	 * @param region the region
+	 * @return the region which covers the whole lines of the given region, or <code>null</code>
+	 *         if the lines cannot be computed.
+	 */
+	private static IRegion getLineRegion(IDocument document, IRegion region) {
+		if (document == null) {
+			return null;
+		}
+		int offset= region.getOffset();
+		int length= region.getLength();
+		if (region instanceof DirtyRegion && DirtyRegion.REMOVE.equals(((DirtyRegion) region).getType())) {
+			// the removed text doesn't exist any more in the document
+			length= 0;
+		}
+		try {
+			int start= Math.min(offset, document.getLength());
+			int end= Math.min(offset + length, document.getLength());
+			IRegion startLine= document.getLineInformationOfOffset(start);
+			IRegion endLine= document.getLineInformationOfOffset(end);
+			return new Region(startLine.getOffset(),
+					endLine.getOffset() + endLine.getLength() - startLine.getOffset());
+		} catch (BadLocationException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Returns the union of the given regions, where <code>null</code> means the whole document.
+	 *
+	 * @param region1 the first region
+	 * @param region2 the second region
+	 * @return the union of the given regions.
+	 */
+	private static IRegion union(IRegion region1, IRegion region2) {
+		if (region1 == null || region2 == null) {
+			return null;
+		}
+		int start= Math.min(region1.getOffset(), region2.getOffset());
+		int end= Math.max(region1.getOffset() + region1.getLength(), region2.getOffset() + region2.getLength());
+		return new Region(start, end - start);
 	}
 
 	/**
@@ -225,67 +917,318 @@ public class CodeMiningManager implements Runnable {
 	private void cancel() {
 		// Cancel the last progress monitor.
 		if (fMonitor != null) {
-			fMonitor.setCanceled(true);
+			fMonitor.cancel();
+		}
+	}
+
+	/**
+	 * Returns the groups of the given code minings by same position line, sorted by offset. The
+	 * code minings of a group are sorted by provider rank.
+	 *
+	 * @param codeMinings list of code minings to group.
+	 * @param owners the provider of the manager which has collected each code mining
+	 * @param providerRanks the rank of the CodeMining providers used to retrieve code minings.
+	 * @return the groups of the given code minings by same position line, sorted by offset.
+	 */
+	private static List<CodeMiningGroup> goupByLines(List<? extends ICodeMining> codeMinings,
+			Map<ICodeMining, ICodeMiningProvider> owners, Map<ICodeMiningProvider, Integer> providerRanks) {
+		int size= codeMinings.size();
+		ICodeMining[] minings= codeMinings.toArray(new ICodeMining[size]);
+		// stable bucket sort of code minings by provider rank, the rank is computed once by mining.
+		int[] ranks= new int[size];
+		int[] bucketStarts= new int[providerRanks.size() + 2];
+		for (int i= 0; i < size; i++) {
+			ranks[i]= getRank(minings[i], owners, providerRanks);
+			bucketStarts[ranks[i] + 1]++;
+		}
+		for (int rank= 1; rank < bucketStarts.length; rank++) {
+			bucketStarts[rank]+= bucketStarts[rank - 1];
 		}
+		ICodeMining[] sortedByRank= new ICodeMining[size];
+		for (int i= 0; i < size; i++) {
+			sortedByRank[bucketStarts[ranks[i]]++]= minings[i];
+		}
+		// sort by offset, then by provider rank, with primitive keys: the offset in the high bits
+		// and the index in the rank order in the low bits.
+		long[] keys= new long[size];
+		for (int i= 0; i < size; i++) {
+			keys[i]= ((long) sortedByRank[i].getPosition().getOffset() << 32) | i;
+		}
+		Arrays.sort(keys);
+		// group code minings by position, the groups of a same offset are contiguous.
+		List<CodeMiningGroup> groups= new ArrayList<>();
+		int firstGroupOfOffset= 0;
+		for (long key : keys) {
+			ICodeMining mining= sortedByRank[(int) key];
+			Position position= mining.getPosition();
+			if (groups.isEmpty() || groups.get(groups.size() - 1).offset != position.getOffset()) {
+				firstGroupOfOffset= groups.size();
+			}
+			CodeMiningGroup group= findGroup(groups, firstGroupOfOffset, position.getOffset(), position.getLength());
+			if (group == null) {
+				group= new CodeMiningGroup(position.getOffset(), position.getLength());
+				groups.add(group);
+			}
+			group.minings.add(mining);
+		}
+		return groups;
 	}
 
 	/**
-	 * Return the list of {@link CompletableFuture} which provides the list of {@link ICodeMining}
-	 * for the given <code>viewer</code> by using the given providers.
+	 * Returns the group with the given offset and length from the given start index, or
+	 * <code>null</code> if not found.
 	 *
-	 * @param viewer the text viewer.
-	 * @param providers the CodeMining list providers.
-	 * @param monitor the progress monitor.
-	 * @return the list of {@link CompletableFuture} which provides the list of {@link ICodeMining}
-	 *         for the given <code>viewer</code> by using the given providers.
+	 * @param groups the groups sorted by offset
+	 * @param start the index of the first group to check
+	 * @param offset the offset of the group
+	 * @param length the length of the group
+	 * @return the group with the given offset and length, or <code>null</code> if not found.
 	 */
-	private static CompletableFuture<List<? extends ICodeMining>> getCodeMinings(ITextViewer viewer,
-			List<ICodeMiningProvider> providers, IProgressMonitor monitor) {
-		List<CompletableFuture<List<? extends ICodeMining>>> com= providers.stream()
-				.map(provider -> provider.provideCodeMinings(viewer, monitor)).filter(c -> c != null)
-				.collect(Collectors.toList());
-		return CompletableFuture.allOf(com.toArray(new CompletableFuture[com.size()])).thenApply(
-				v -> com.stream().map(CompletableFuture::join).flatMap(l -> l.stream()).collect(Collectors.toList()));
+	private static CodeMiningGroup findGroup(List<CodeMiningGroup> groups, int start, int offset, int length) {
+		for (int i= start; i < groups.size(); i++) {
+			CodeMiningGroup group= groups.get(i);
+			if (group.offset != offset) {
+				return null;
+			}
+			if (group.length == length) {
+				return group;
+			}
+		}
+		return null;
 	}
 
 	/**
-	 * Returns a sorted Map which groups the given code minings by same position line
+	 * Returns the index of the first group with the given offset, or <code>-1</code> if not found.
 	 *
-	 * @param codeMinings list of code minings to group.
-	 * @param providers CodeMining providers used to retrieve code minings.
-	 * @return a sorted Map which groups the given code minings by same position line.
-	 */
-	private static Map<Position, List<ICodeMining>> goupByLines(List<? extends ICodeMining> codeMinings,
-			List<ICodeMiningProvider> providers) {
-		// sort code minings by lineNumber and provider-rank if
-		Collections.sort(codeMinings, (a, b) -> {
-			if (a.getPosition().offset < b.getPosition().offset) {
-				return -1;
-			} else if (a.getPosition().offset > b.getPosition().offset) {
-				return 1;
-			} else if (providers.indexOf(a.getProvider()) < providers.indexOf(b.getProvider())) {
-				return -1;
-			} else if (providers.indexOf(a.getProvider()) > providers.indexOf(b.getProvider())) {
-				return 1;
+	 * @param groups the groups sorted by offset
+	 * @param offset the offset of the group
+	 * @return the index of the first group with the given offset, or <code>-1</code> if not found.
+	 */
+	private static int indexOfGroup(List<CodeMiningGroup> groups, int offset) {
+		int low= 0;
+		int high= groups.size() - 1;
+		int index= -1;
+		while (low <= high) {
+			int middle= (low + high) >>> 1;
+			int middleOffset= groups.get(middle).offset;
+			if (middleOffset < offset) {
+				low= middle + 1;
 			} else {
-				return 0;
+				if (middleOffset == offset) {
+					index= middle;
+				}
+				high= middle - 1;
+			}
+		}
+		return index;
+	}
+
+	/**
+	 * Returns the rank of the provider of the manager which has collected the given code mining.
+	 *
+	 * @param mining the code mining
+	 * @param owners the provider of the manager which has collected each code mining
+	 * @param providerRanks the rank of the CodeMining providers
+	 * @return the rank of the provider of the given code mining, 0 if the provider is unknown.
+	 */
+	private static int getRank(ICodeMining mining, Map<ICodeMining, ICodeMiningProvider> owners,
+			Map<ICodeMiningProvider, Integer> providerRanks) {
+		ICodeMiningProvider owner= owners.get(mining);
+		Integer rank= providerRanks.get(owner != null ? owner : mining.getProvider());
+		return rank != null ? rank.intValue() : 0;
+	}
+
+	/**
+	 * Add to the given groups the code minings of the current annotations located in the given
+	 * region whose provider is not in the given completed providers.
+	 *
+	 * @param groups code minings grouped by lines position
+	 * @param region the region (covering whole lines) of the code minings, or <code>null</code>
+	 *            for the whole document.
+	 * @param completedProviders the providers which completed successfully
+	 * @param owners the provider of the manager which has collected each code mining, updated with
+	 *            the previous code minings
+	 * @param providerRanks the rank of the CodeMining providers used to sort code minings.
+	 */
+	private void addPreviousCodeMinings(List<CodeMiningGroup> groups, IRegion region,
+			Set<ICodeMiningProvider> completedProviders, Map<ICodeMining, ICodeMiningProvider> owners,
+			Map<ICodeMiningProvider, Integer> providerRanks) {
+		List<CodeMiningGroup> newGroups= new ArrayList<>();
+		Collection<AbstractInlinedAnnotation> annotations= region != null
+				? fInlinedAnnotationSupport.findExistingAnnotations(region.getOffset(), region.getLength())
+				: fInlinedAnnotationSupport.getInlinedAnnotations();
+		for (AbstractInlinedAnnotation annotation : annotations) {
+			if (!(annotation instanceof CodeMiningAnnotation) || annotation.isMarkedDeleted()) {
+				continue;
+			}
+			Position position= annotation.getPosition();
+			if (position.isDeleted() || (region != null && (position.getOffset() < region.getOffset()
+					|| position.getOffset() > region.getOffset() + region.getLength()))) {
+				continue;
+			}
+			CodeMiningAnnotation ann= (CodeMiningAnnotation) annotation;
+			List<ICodeMining> previous= new ArrayList<>();
+			for (ICodeMining mining : ann.getMinings()) {
+				// the provider of the mining can be wrapped by the provider of the manager.
+				ICodeMiningProvider owner= ann.getOwner(mining);
+				if (!completedProviders.contains(owner)) {
+					previous.add(mining);
+					owners.put(mining, owner);
+				}
+			}
+			if (previous.isEmpty()) {
+				continue;
+			}
+			// the previous code minings are grouped with the current position of the annotation
+			// since the position of code mining is not updated by the document changes.
+			int index= indexOfGroup(groups, position.getOffset());
+			CodeMiningGroup group= index != -1
+					? findGroup(groups, index, position.getOffset(), position.getLength())
+					: null;
+			if (group == null) {
+				group= new CodeMiningGroup(position.getOffset(), position.getLength());
+				newGroups.add(group);
+			}
+			group.minings.addAll(previous);
+			group.minings.sort(Comparator.comparingInt(m -> getRank(m, owners, providerRanks)));
+		}
+		if (!newGroups.isEmpty()) {
+			groups.addAll(newGroups);
+			groups.sort(Comparator.comparingInt(g -> g.offset));
+		}
+	}
+
+	/**
+	 * Returns the resolved code minings which have a key of the current annotations located in the
+	 * given region, by provider and by key.
+	 *
+	 * @param region the region (covering whole lines) of the code minings, or <code>null</code>
+	 *            for the whole document.
+	 * @return the resolved code minings which have a key by provider and by key.
+	 */
+	private Map<ICodeMiningProvider, Map<Object, ICodeMining>> getResolvedCodeMinings(IRegion region) {
+		Map<ICodeMiningProvider, Map<Object, ICodeMining>> resolvedMinings= new HashMap<>();
+		Collection<AbstractInlinedAnnotation> annotations= region != null
+				? fInlinedAnnotationSupport.findExistingAnnotations(region.getOffset(), region.getLength())
+				: fInlinedAnnotationSupport.getInlinedAnnotations();
+		for (AbstractInlinedAnnotation annotation : annotations) {
+			if (!(annotation instanceof CodeMiningAnnotation) || annotation.isMarkedDeleted()) {
+				continue;
+			}
+			for (ICodeMining mining : ((CodeMiningAnnotation) annotation).getMinings()) {
+				Object key= mining.getKey();
+				if (key != null && mining.getProvider() != null && mining.isResolved()) {
+					resolvedMinings.computeIfAbsent(mining.getProvider(), p -> new HashMap<>()).put(key, mining);
+				}
+			}
+		}
+		return resolvedMinings;
+	}
+
+	/**
+	 * Returns the labels drawn by the code minings which have a key of the current annotations
+	 * located in the given region, by provider and by key. The label of an unresolved code mining
+	 * is its previous label.
+	 *
+	 * @param region the region (covering whole lines) of the code minings, or <code>null</code>
+	 *            for the whole document.
+	 * @return the labels drawn by the code minings which have a key by provider and by key.
+	 */
+	private Map<ICodeMiningProvider, Map<Object, String>> getPreviousLabels(IRegion region) {
+		Map<ICodeMiningProvider, Map<Object, String>> previousLabels= new HashMap<>();
+		Collection<AbstractInlinedAnnotation> annotations= region != null
+				? fInlinedAnnotationSupport.findExistingAnnotations(region.getOffset(), region.getLength())
+				: fInlinedAnnotationSupport.getInlinedAnnotations();
+		for (AbstractInlinedAnnotation annotation : annotations) {
+			if (!(annotation instanceof CodeMiningAnnotation) || annotation.isMarkedDeleted()) {
+				continue;
+			}
+			CodeMiningAnnotation ann= (CodeMiningAnnotation) annotation;
+			for (ICodeMining mining : ann.getMinings()) {
+				Object key= mining.getKey();
+				if (key == null || mining.getProvider() == null) {
+					continue;
+				}
+				String label= mining.isResolved() ? mining.getLabel() : ann.getStaleLabel(mining);
+				if (label != null) {
+					previousLabels.computeIfAbsent(mining.getProvider(), p -> new HashMap<>()).put(key, label);
+				}
+			}
+		}
+		return previousLabels;
+	}
+
+	/**
+	 * Returns the previous labels of the given unresolved code minings, by code mining.
+	 *
+	 * @param minings the code minings to render
+	 * @param previousLabels the previous labels by provider and by key
+	 * @return the previous labels of the given unresolved code minings.
+	 */
+	private static Map<ICodeMining, String> getStaleLabels(List<ICodeMining> minings,
+			Map<ICodeMiningProvider, Map<Object, String>> previousLabels) {
+		if (previousLabels.isEmpty()) {
+			return Collections.emptyMap();
+		}
+		Map<ICodeMining, String> staleLabels= new IdentityHashMap<>();
+		for (ICodeMining mining : minings) {
+			Object key= mining.getKey();
+			if (key == null || mining.isResolved()) {
+				continue;
+			}
+			Map<Object, String> providerLabels= previousLabels.get(mining.getProvider());
+			String label= providerLabels != null ? providerLabels.get(key) : null;
+			if (label != null) {
+				staleLabels.put(mining, label);
+			}
+		}
+		return staleLabels;
+	}
+
+	/**
+	 * Reuse the resolved content of the previous code minings which have the same provider and an
+	 * equal key when their provider says that it is still valid, so that the given code minings
+	 * are not resolved again.
+	 *
+	 * @param minings the code minings to render
+	 * @param resolvedMinings the previous resolved code minings by provider and by key
+	 */
+	private static void reuseResolvedContents(List<ICodeMining> minings,
+			Map<ICodeMiningProvider, Map<Object, ICodeMining>> resolvedMinings) {
+		if (resolvedMinings.isEmpty()) {
+			return;
+		}
+		for (ICodeMining mining : minings) {
+			Object key= mining.getKey();
+			if (key == null || mining.isResolved()) {
+				continue;
+			}
+			Map<Object, ICodeMining> providerMinings= resolvedMinings.get(mining.getProvider());
+			ICodeMining previous= providerMinings != null ? providerMinings.get(key) : null;
+			if (previous != null && previous != mining
+					&& mining.getProvider().isResolvedContentValid(previous, mining)) {
+				mining.reuseResolvedContent(previous);
 			}
-		});
-		return codeMinings.stream().collect(Collectors.groupingBy(ICodeMining::getPosition, LinkedHashMap::new,
-				Collectors.mapping(Function.identity(), Collectors.toList())));
+		}
 	}
 
 	/**
 	 * Render the codemining grouped by line position.
 	 *
 	 * @param groups code minings grouped by lines position
+	 * @param owners the provider of the manager which has collected each code mining
+	 * @param region the region (covering whole lines) of the code minings, or <code>null</code>
+	 *            for the whole document.
 	 * @param viewer the viewer
 	 * @param monitor the progress monitor
+	 * @param completed true if all providers completed and false otherwise.
 	 */
-	private void renderCodeMinings(Map<Position, List<ICodeMining>> groups, ISourceViewer viewer,
-			IProgressMonitor monitor) {
+	private void renderCodeMinings(List<CodeMiningGroup> groups, Map<ICodeMining, ICodeMiningProvider> owners,
+			IRegion region, ISourceViewer viewer, IProgressMonitor monitor, boolean completed) {
 		// check if request was canceled.
-		monitor.isCanceled();
+		if (monitor.isCanceled()) {
+			return;
+		}
 		IDocument document= viewer != null ? viewer.getDocument() : null;
 		if (document == null) {
 			// this case comes from when editor is closed before codemining rendered is
@@ -294,30 +1237,53 @@ public class CodeMiningManager implements Runnable {
 		}
 		Set<CodeMiningAnnotation> annotationsToRedraw= new HashSet<>();
 		Set<AbstractInlinedAnnotation> currentAnnotations= new HashSet<>();
+		List<CodeMiningAnnotation> annotationsToResolve= new ArrayList<>();
+		Map<ICodeMiningProvider, Map<Object, ICodeMining>> resolvedMinings= getResolvedCodeMinings(region);
+		boolean staleWhileRevalidate= fStaleWhileRevalidate;
+		boolean greyStaleLabels= fGreyStaleLabels;
+		Map<ICodeMiningProvider, Map<Object, String>> previousLabels= staleWhileRevalidate
+				? getPreviousLabels(region)
+				: Collections.emptyMap();
 		// Loop for grouped code minings
-		groups.entrySet().stream().forEach(g -> {
+		for (CodeMiningGroup group : groups) {
 			// check if request was canceled.
-			monitor.isCanceled();
+			if (monitor.isCanceled()) {
+				return;
+			}
 
-			Position pos= new Position(g.getKey().offset, g.getKey().length);
-			List<ICodeMining> minings= g.getValue();
+			Position pos= new Position(group.offset, group.length);
+			List<ICodeMining> minings= group.minings;
+			reuseResolvedContents(minings, resolvedMinings);
+			Map<ICodeMining, String> staleLabels= getStaleLabels(minings, previousLabels);
 			// Try to find existing annotation
 			CodeMiningAnnotation ann= fInlinedAnnotationSupport.findExistingAnnotation(pos);
 			if (ann == null) {
 				// The annotation doesn't exists, create it.
-				ann= new CodeMiningAnnotation(pos, viewer);
+				ann= new CodeMiningAnnotation(pos, viewer, fResolveScheduler, fImageCache);
 			} else if (visibleLines.isInVisibleLines(ann)) {
 				// annotation is in visible lines
 				annotationsToRedraw.add(ann);
 			}
-			ann.update(minings, monitor);
+			ann.update(minings, owners, staleLabels, greyStaleLabels, monitor);
 			currentAnnotations.add(ann);
-		});
+			annotationsToResolve.add(ann);
+		}
 		// check if request was canceled.
-		monitor.isCanceled();
-		fInlinedAnnotationSupport.updateAnnotations(currentAnnotations);
+		if (monitor.isCanceled()) {
+			return;
+		}
+		synchronized (this) {
+			if (completed && monitor == fMonitor) {
+				// the refresh is done, the next refresh can be limited to its own region.
+				fPending= false;
+				fPendingRegion= null;
+			}
+		}
+		fInlinedAnnotationSupport.updateAnnotations(currentAnnotations, region);
 		// redraw the existing codemining annotations since their content can change
 		annotationsToRedraw.stream().forEach(ann -> ann.redraw());
+		// resolve the code minings, starting with the visible lines
+		fResolveScheduler.schedule(annotationsToResolve);
 	}
 
 }
@@ -0,0 +1,611 @@
+/**
+ *  Copyright (c) 2017 Angelo ZERR.
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  Contributors:
+ *  Angelo Zerr <angelo.zerr@gmail.com> - [CodeMining] Provide CodeMining support with CodeMiningManager - Bug 527720
+ */
+package org.eclipse.jface.internal.text.codemining;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.WeakHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.eclipse.jface.text.ITextViewer;
+import org.eclipse.jface.text.codemining.CancellationToken;
+import org.eclipse.jface.text.codemining.CodeMiningExecutor;
+import org.eclipse.jface.text.codemining.CodeMiningProviderPolicy;
+import org.eclipse.jface.text.codemining.ICodeMining;
+import org.eclipse.jface.text.codemining.ICodeMiningProvider;
+
+/**
+ * Scheduler which resolves the code minings of {@link CodeMiningAnnotation} by priority:
+ *
+ * <ul>
+ * <li>the annotations located in the visible lines are resolved first.</li>
+ * <li>then the annotations located in a band of lines above and below the visible lines.</li>
+ * <li>then the other annotations.</li>
+ * </ul>
+ *
+ * The queued annotations are indexed by offset, so that only the annotations located in the visible
+ * lines and in the band are reprioritized when the viewport changes: the cost of a scroll doesn't
+ * depend on the number of queued annotations. The unresolved code minings of the annotations
+ * located in the visible lines and in the band are first given by provider to {@link ICodeMiningProvider#resolveCodeMinings(ITextViewer, List,
+ * org.eclipse.core.runtime.IProgressMonitor)}, so that a provider can resolve them with one batch.
+ * The batch resolve is called with the executor of the provider, never on the caller thread, and
+ * the batched annotations are removed from the queue until their batches are submitted.
+ *
+ * @since 3.13
+ */
+class CodeMiningResolveScheduler {
+
+	/**
+	 * The default maximum number of annotations which are resolved at the same time.
+	 */
+	private static final int DEFAULT_MAX_CONCURRENT_RESOLVES= 4;
+
+	/**
+	 * Priority tier of annotations located in the visible lines.
+	 */
+	private static final int VISIBLE_TIER= 0;
+
+	/**
+	 * Priority tier of annotations located in the band above and below the visible lines.
+	 */
+	private static final int BAND_TIER= 1;
+
+	/**
+	 * Priority tier of the other annotations.
+	 */
+	private static final int OTHER_TIER= 2;
+
+	/**
+	 * Queued annotation with its priority.
+	 */
+	private static class Entry implements Comparable<Entry> {
+
+		private final CodeMiningAnnotation annotation;
+
+		private int tier;
+
+		private int distance;
+
+		private int offset;
+
+		Entry(CodeMiningAnnotation annotation) {
+			this.annotation= annotation;
+		}
+
+		@Override
+		public int compareTo(Entry other) {
+			if (tier != other.tier) {
+				return tier < other.tier ? -1 : 1;
+			}
+			if (distance != other.distance) {
+				return distance < other.distance ? -1 : 1;
+			}
+			return Integer.compare(offset, other.offset);
+		}
+	}
+
+	/**
+	 * The unresolved code minings of a provider with their annotation.
+	 */
+	private static class Batch {
+
+		private final List<ICodeMining> minings= new ArrayList<>();
+
+		private final List<CodeMiningAnnotation> annotations= new ArrayList<>();
+	}
+
+	/**
+	 * The viewer of the annotations.
+	 */
+	private final ITextViewer fViewer;
+
+	/**
+	 * The cancellation token of the batch resolves, canceled when the scheduler is cleared.
+	 */
+	private CancellationToken fBatchToken= new CancellationToken();
+
+	/**
+	 * The queue of annotations to resolve located in the visible lines and in the band, sorted by
+	 * priority.
+	 */
+	private final PriorityQueue<Entry> fQueue= new PriorityQueue<>();
+
+	/**
+	 * The queued entries by offset, the far entries are taken from this index by distance to the
+	 * visible lines.
+	 */
+	private final TreeMap<Integer, List<Entry>> fOffsets= new TreeMap<>();
+
+	/**
+	 * The queued entries by annotation.
+	 */
+	private final Map<CodeMiningAnnotation, Entry> fEntries= new HashMap<>();
+
+	/**
+	 * The annotations which are resolving.
+	 */
+	private final Set<CodeMiningAnnotation> fResolving= new HashSet<>();
+
+	/**
+	 * The annotations whose code minings are given to the batch resolve of their provider.
+	 */
+	private final Set<CodeMiningAnnotation> fBatching= new HashSet<>();
+
+	/**
+	 * The providers which don't support the batch resolve.
+	 */
+	private final Set<ICodeMiningProvider> fUnbatchedProviders= Collections.newSetFromMap(new WeakHashMap<>());
+
+	/**
+	 * The maximum number of annotations which are resolved at the same time.
+	 */
+	private int fMaxConcurrentResolves= DEFAULT_MAX_CONCURRENT_RESOLVES;
+
+	/**
+	 * true if only the annotations located in the visible lines and in the band are resolved, and
+	 * false if all annotations are resolved.
+	 */
+	private boolean fLazy;
+
+	/**
+	 * The start offset of the visible lines.
+	 */
+	private int fVisibleStart= -1;
+
+	/**
+	 * The end offset of the visible lines.
+	 */
+	private int fVisibleEnd= -1;
+
+	/**
+	 * The start offset of the band of lines above the visible lines.
+	 */
+	private int fBandStart= -1;
+
+	/**
+	 * The end offset of the band of lines below the visible lines.
+	 */
+	private int fBandEnd= -1;
+
+	/**
+	 * Creates a scheduler which resolves the code minings of the given viewer.
+	 *
+	 * @param viewer the viewer of the annotations
+	 */
+	CodeMiningResolveScheduler(ITextViewer viewer) {
+		fViewer= viewer;
+	}
+
+	/**
+	 * Set the maximum number of annotations which are resolved at the same time.
+	 *
+	 * @param maxConcurrentResolves the maximum number of annotations which are resolved at the
+	 *            same time.
+	 */
+	public void setMaxConcurrentResolves(int maxConcurrentResolves) {
+		synchronized (this) {
+			fMaxConcurrentResolves= Math.max(1, maxConcurrentResolves);
+		}
+		dispatch();
+	}
+
+	/**
+	 * Set whether only the annotations located in the visible lines and in the band are resolved.
+	 * In this lazy mode, the other annotations are resolved when they are scheduled again after
+	 * coming into the band.
+	 *
+	 * @param lazy true to resolve only the annotations located in the visible lines and in the
+	 *            band.
+	 */
+	public synchronized void setLazy(boolean lazy) {
+		fLazy= lazy;
+	}
+
+	/**
+	 * Update the viewport and reprioritize the queued annotations.
+	 *
+	 * @param visibleStart the start offset of the visible lines
+	 * @param visibleEnd the end offset of the visible lines
+	 * @param bandStart the start offset of the band above the visible lines
+	 * @param bandEnd the end offset of the band below the visible lines
+	 */
+	public void setViewport(int visibleStart, int visibleEnd, int bandStart, int bandEnd) {
+		synchronized (this) {
+			if (visibleStart == fVisibleStart && visibleEnd == fVisibleEnd && bandStart == fBandStart
+					&& bandEnd == fBandEnd) {
+				// the priorities have not changed.
+				return;
+			}
+			fVisibleStart= visibleStart;
+			fVisibleEnd= visibleEnd;
+			fBandStart= bandStart;
+			fBandEnd= bandEnd;
+			// the entries which leave the band become far entries, only the entries located in the
+			// new band are reprioritized.
+			for (Entry entry : fQueue) {
+				entry.tier= OTHER_TIER;
+			}
+			fQueue.clear();
+			int start= getNearStart();
+			int end= getNearEnd();
+			if (start != -1 && end >= start) {
+				for (List<Entry> entries : fOffsets.subMap(start, true, end, true).values()) {
+					for (Entry entry : entries) {
+						computePriority(entry);
+						if (entry.tier != OTHER_TIER) {
+							fQueue.add(entry);
+						}
+					}
+				}
+			}
+		}
+		resolveBatches();
+		dispatch();
+	}
+
+	/**
+	 * Schedule the resolve of the unresolved code minings of the given annotations.
+	 *
+	 * @param annotations the code mining annotations to resolve.
+	 */
+	public void schedule(Collection<CodeMiningAnnotation> annotations) {
+		synchronized (this) {
+			for (CodeMiningAnnotation annotation : annotations) {
+				enqueue(annotation);
+			}
+		}
+		resolveBatches();
+		dispatch();
+	}
+
+	/**
+	 * Schedule the resolve of the unresolved code minings of the given annotation.
+	 *
+	 * @param annotation the code mining annotation to resolve.
+	 */
+	public void schedule(CodeMiningAnnotation annotation) {
+		synchronized (this) {
+			if (!enqueue(annotation)) {
+				return;
+			}
+		}
+		dispatch();
+	}
+
+	/**
+	 * Clear the queued annotations and cancel the running batch resolves.
+	 */
+	public void clear() {
+		CancellationToken token;
+		synchronized (this) {
+			fQueue.clear();
+			fOffsets.clear();
+			fEntries.clear();
+			token= fBatchToken;
+			fBatchToken= new CancellationToken();
+		}
+		token.cancel();
+	}
+
+	private boolean enqueue(CodeMiningAnnotation annotation) {
+		Entry queued= fEntries.get(annotation);
+		if (queued != null) {
+			if (queued.offset != annotation.getPosition().getOffset()) {
+				// the annotation has moved, index it with its new offset.
+				remove(queued);
+				add(queued);
+			}
+			return false;
+		}
+		if (fResolving.contains(annotation) || fBatching.contains(annotation) || annotation.isMarkedDeleted()
+				|| !annotation.needsResolve()) {
+			return false;
+		}
+		Entry entry= new Entry(annotation);
+		entry.offset= annotation.getPosition().getOffset();
+		computePriority(entry);
+		if (fLazy && entry.tier == OTHER_TIER) {
+			// the annotation is far from the visible lines, it is resolved when it comes into the band.
+			return false;
+		}
+		add(entry);
+		return true;
+	}
+
+	/**
+	 * Add the given entry to the index and, when it is located in the visible lines or in the band,
+	 * to the queue.
+	 *
+	 * @param entry the entry to add
+	 */
+	private void add(Entry entry) {
+		entry.offset= entry.annotation.getPosition().getOffset();
+		computePriority(entry);
+		fEntries.put(entry.annotation, entry);
+		fOffsets.computeIfAbsent(entry.offset, o -> new ArrayList<>(1)).add(entry);
+		if (entry.tier != OTHER_TIER) {
+			fQueue.add(entry);
+		}
+	}
+
+	/**
+	 * Remove the given entry from the index and from the queue.
+	 *
+	 * @param entry the entry to remove
+	 */
+	private void remove(Entry entry) {
+		unindex(entry);
+		if (entry.tier != OTHER_TIER) {
+			fQueue.remove(entry);
+		}
+	}
+
+	/**
+	 * Remove the given entry from the index.
+	 *
+	 * @param entry the entry to remove
+	 */
+	private void unindex(Entry entry) {
+		fEntries.remove(entry.annotation);
+		List<Entry> entries= fOffsets.get(entry.offset);
+		if (entries != null) {
+			entries.remove(entry);
+			if (entries.isEmpty()) {
+				fOffsets.remove(entry.offset);
+			}
+		}
+	}
+
+	/**
+	 * Returns the far entry which is the nearest to the visible lines, or <code>null</code> if
+	 * there is none.
+	 *
+	 * @return the far entry which is the nearest to the visible lines, or <code>null</code>.
+	 */
+	private Entry nearestFarEntry() {
+		int start= getNearStart();
+		int end= getNearEnd();
+		if (start == -1 || end < start) {
+			Map.Entry<Integer, List<Entry>> first= fOffsets.firstEntry();
+			return first != null ? first.getValue().get(0) : null;
+		}
+		Map.Entry<Integer, List<Entry>> below= fOffsets.lowerEntry(start);
+		Map.Entry<Integer, List<Entry>> above= fOffsets.higherEntry(end);
+		if (below == null) {
+			return above != null ? above.getValue().get(0) : null;
+		}
+		if (above == null || fVisibleStart - below.getKey() <= above.getKey() - fVisibleEnd) {
+			return below.getValue().get(0);
+		}
+		return above.getValue().get(0);
+	}
+
+	/**
+	 * Returns the start offset of the lines whose annotations are queued by priority.
+	 *
+	 * @return the start offset of the lines whose annotations are queued by priority.
+	 */
+	private int getNearStart() {
+		return fBandStart != -1 ? Math.min(fBandStart, fVisibleStart) : fVisibleStart;
+	}
+
+	/**
+	 * Returns the end offset of the lines whose annotations are queued by priority.
+	 *
+	 * @return the end offset of the lines whose annotations are queued by priority.
+	 */
+	private int getNearEnd() {
+		return fBandEnd != -1 ? Math.max(fBandEnd, fVisibleEnd) : fVisibleEnd;
+	}
+
+	private void computePriority(Entry entry) {
+		int offset= entry.offset;
+		if (offset >= fVisibleStart && offset <= fVisibleEnd) {
+			entry.tier= VISIBLE_TIER;
+			entry.distance= 0;
+			return;
+		}
+		entry.distance= offset < fVisibleStart ? fVisibleStart - offset : offset - fVisibleEnd;
+		entry.tier= offset >= fBandStart && offset <= fBandEnd ? BAND_TIER : OTHER_TIER;
+	}
+
+	/**
+	 * Give the unresolved code minings of the queued annotations located in the visible lines and
+	 * in the band to the batch resolve of their provider, called with the executor of the
+	 * provider. The batched annotations are removed from the queue until their batches are
+	 * submitted, so that their code minings are not batched twice. The code minings whose provider
+	 * doesn't support the batch resolve are resolved one by one by {@link #dispatch()}.
+	 */
+	private void resolveBatches() {
+		Map<ICodeMiningProvider, Batch> batches= new LinkedHashMap<>();
+		Set<CodeMiningAnnotation> batched= new HashSet<>();
+		CancellationToken token;
+		synchronized (this) {
+			for (Entry entry : fQueue) {
+				CodeMiningAnnotation annotation= entry.annotation;
+				for (ICodeMining mining : annotation.getMinings()) {
+					ICodeMiningProvider provider= mining.getProvider();
+					if (provider != null && !fUnbatchedProviders.contains(provider)
+							&& annotation.needsResolve(mining)) {
+						Batch batch= batches.computeIfAbsent(provider, p -> new Batch());
+						batch.minings.add(mining);
+						batch.annotations.add(annotation);
+						batched.add(annotation);
+					}
+				}
+			}
+			if (batched.isEmpty()) {
+				return;
+			}
+			for (CodeMiningAnnotation annotation : batched) {
+				remove(fEntries.get(annotation));
+				fBatching.add(annotation);
+			}
+			token= fBatchToken;
+		}
+		// the annotation is released when all the batches of its code minings are submitted.
+		Map<CodeMiningAnnotation, List<CompletableFuture<Void>>> submissions= new HashMap<>();
+		Map<ICodeMiningProvider, CompletableFuture<Void>> batchSubmissions= new HashMap<>();
+		for (Map.Entry<ICodeMiningProvider, Batch> entry : batches.entrySet()) {
+			CompletableFuture<Void> submitted= new CompletableFuture<>();
+			batchSubmissions.put(entry.getKey(), submitted);
+			for (CodeMiningAnnotation annotation : entry.getValue().annotations) {
+				submissions.computeIfAbsent(annotation, a -> new ArrayList<>()).add(submitted);
+			}
+		}
+		for (Map.Entry<CodeMiningAnnotation, List<CompletableFuture<Void>>> entry : submissions.entrySet()) {
+			CodeMiningAnnotation annotation= entry.getKey();
+			List<CompletableFuture<Void>> futures= entry.getValue();
+			CompletableFuture.allOf(futures.toArray(new CompletableFuture[futures.size()]))
+					.whenComplete((result, error) -> {
+						batchDone(annotation);
+						dispatch();
+					});
+		}
+		for (Map.Entry<ICodeMiningProvider, Batch> entry : batches.entrySet()) {
+			ICodeMiningProvider provider= entry.getKey();
+			Batch batch= entry.getValue();
+			CompletableFuture<Void> submitted= batchSubmissions.get(provider);
+			try {
+				CodeMiningExecutor.getDefault().getExecutor(provider)
+						.execute(() -> resolveBatch(provider, batch, token, submitted));
+			} catch (RejectedExecutionException e) {
+				// the code minings are resolved one by one.
+				submitted.complete(null);
+			}
+		}
+	}
+
+	/**
+	 * Give the given code minings to the batch resolve of the given provider.
+	 *
+	 * @param provider the code mining provider
+	 * @param batch the unresolved code minings of the provider with their annotation
+	 * @param token the cancellation token of the batch resolves
+	 * @param submitted the future completed when the batch is submitted
+	 */
+	private void resolveBatch(ICodeMiningProvider provider, Batch batch, CancellationToken token,
+			CompletableFuture<Void> submitted) {
+		try {
+			if (token.isCanceled()) {
+				return;
+			}
+			CompletableFuture<Void> future;
+			try {
+				future= provider.resolveCodeMinings(fViewer, batch.minings, token);
+			} catch (RuntimeException e) {
+				future= null;
+			}
+			if (future == null) {
+				// the batch resolve is not supported, the code minings are resolved one by one.
+				synchronized (this) {
+					fUnbatchedProviders.add(provider);
+				}
+				return;
+			}
+			CodeMiningProviderPolicy policy= provider.getPolicy();
+			if (policy != null) {
+				// record the deadline of the batch in the circuit breaker of the provider.
+				policy.guardResolve(future);
+			}
+			for (int i= 0; i < batch.minings.size(); i++) {
+				batch.annotations.get(i).resolve(batch.minings.get(i), future);
+			}
+		} finally {
+			submitted.complete(null);
+		}
+	}
+
+	/**
+	 * Resolve the queued annotations with the highest priority while there are free slots.
+	 */
+	private void dispatch() {
+		while (true) {
+			CodeMiningAnnotation annotation= next();
+			if (annotation == null) {
+				return;
+			}
+			CompletableFuture<Void> future;
+			try {
+				future= annotation.resolve();
+			} catch (RuntimeException e) {
+				future= null;
+			}
+			if (future == null || future.isDone()) {
+				// resolved synchronously, loop instead of recursing.
+				done(annotation, false);
+				continue;
+			}
+			future.whenComplete((result, error) -> {
+				done(annotation, true);
+				dispatch();
+			});
+		}
+	}
+
+	private synchronized CodeMiningAnnotation next() {
+		while (fResolving.size() < fMaxConcurrentResolves) {
+			Entry entry= fQueue.poll();
+			if (entry == null) {
+				if (fLazy) {
+					// the far annotations are resolved when they come into the band.
+					return null;
+				}
+				entry= nearestFarEntry();
+				if (entry == null) {
+					return null;
+				}
+			}
+			unindex(entry);
+			if (entry.annotation.isMarkedDeleted() || !entry.annotation.needsResolve()
+					|| (fLazy && entry.tier == OTHER_TIER)) {
+				continue;
+			}
+			fResolving.add(entry.annotation);
+			return entry.annotation;
+		}
+		return null;
+	}
+
+	/**
+	 * Called when the batches of the code minings of the given annotation are submitted: its code
+	 * minings which are not batched are resolved one by one.
+	 *
+	 * @param annotation the code mining annotation
+	 */
+	private void batchDone(CodeMiningAnnotation annotation) {
+		synchronized (this) {
+			fBatching.remove(annotation);
+			enqueue(annotation);
+		}
+	}
+
+	private void done(CodeMiningAnnotation annotation, boolean requeue) {
+		synchronized (this) {
+			fResolving.remove(annotation);
+			if (requeue) {
+				// the minings of the annotation could be updated while resolving.
+				enqueue(annotation);
+			}
+		}
+		annotation.redraw();
+	}
+}
@@ -11,6 +11,7 @@
 package org.eclipse.jface.text.codemining;
 
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 import org.eclipse.swt.custom.StyledText;
 import org.eclipse.swt.graphics.Color;
@@ -45,18 +46,28 @@ public abstract class AbstractCodeMining implements ICodeMining {
 	/**
 	 * The future used to resolve mining.
 	 */
-	private CompletableFuture<Void> resolveFuture;
+	private volatile CompletableFuture<Void> resolveFuture;
 
 	/**
 	 * The label of the resolved codemining.
 	 */
 	private String label;
 
+	/**
+	 * The label of the codemining before it was resolved.
+	 */
+	private String unresolvedLabel;
+
 	/**
 	 * The progress monitor used when {@link #resolve(ITextViewer)} is done.
 	 */
 	private IProgressMonitor fMonitor;
 
+	/**
+	 * The cancellation token of the resolve, canceled when this mining is disposed or released.
+	 */
+	private CancellationToken fToken= new CancellationToken();
+
 	/**
 	 * CodeMining constructor to locate the code mining before the given line number.
 	 *
@@ -97,16 +108,80 @@ public abstract class AbstractCodeMining implements ICodeMining {
 	}
 
 	@Override
-	public final CompletableFuture<Void> resolve(ITextViewer viewer) {
+	public final synchronized CompletableFuture<Void> resolve(ITextViewer viewer) {
+		if (resolveFuture == null) {
+			unresolvedLabel= label;
+			resolveFuture= fToken.register(doResolve(viewer, fToken));
+		}
+		return resolveFuture;
+	}
+
+	/**
+	 * Resolve this mining with the given batch resolve of its provider, which computes its label.
+	 * When the batch fails, this mining is resolved alone with
+	 * {@link #doResolve(ITextViewer, IProgressMonitor)}.
+	 */
+	@Override
+	public final synchronized CompletableFuture<Void> resolve(ITextViewer viewer, CompletableFuture<Void> batch) {
 		if (resolveFuture == null) {
-			resolveFuture= doResolve(viewer, fMonitor);
+			unresolvedLabel= label;
+			CancellationToken token= fToken;
+			resolveFuture= token.register(batch.handle((result, error) -> error).thenCompose(error -> {
+				if (error == null || token.isCanceled()) {
+					return CompletableFuture.completedFuture(null);
+				}
+				CompletableFuture<Void> future= doResolve(viewer, token);
+				return future != null ? future : CompletableFuture.completedFuture(null);
+			}));
 		}
 		return resolveFuture;
 	}
 
+	/**
+	 * Reuse the label of the given previous mining when it is resolved and when this mining is not
+	 * resolving.
+	 */
+	@Override
+	public boolean reuseResolvedContent(ICodeMining previous) {
+		if (!previous.isResolved()) {
+			return false;
+		}
+		String previousLabel= previous.getLabel();
+		synchronized (this) {
+			if (resolveFuture != null) {
+				return false;
+			}
+			unresolvedLabel= label;
+			label= previousLabel;
+			resolveFuture= CompletableFuture.completedFuture(null);
+		}
+		return true;
+	}
+
+	/**
+	 * Release the resolved label of this mining and stop its running resolve. The mining is
+	 * resolved again with {@link #resolve(ITextViewer)} when needed.
+	 */
+	@Override
+	public synchronized void release() {
+		if (resolveFuture == null) {
+			return;
+		}
+		fToken.cancel();
+		fToken= new CancellationToken();
+		resolveFuture= null;
+		label= unresolvedLabel;
+	}
+
 	/**
 	 * Returns the future which resolved the content of mining and null otherwise. By default, the
 	 * resolve do nothing.
+	 * <p>
+	 * The given monitor is the {@link CancellationToken} of this mining which is canceled when
+	 * this mining is disposed: implementors should poll {@link IProgressMonitor#isCanceled()}
+	 * (which doesn't throw an exception) and give the monitor to the long operations (ex: search)
+	 * so that they stop when the mining is no longer used.
+	 * </p>
 	 *
 	 * @param viewer the viewer
 	 * @param monitor the monitor
@@ -116,22 +191,51 @@ public abstract class AbstractCodeMining implements ICodeMining {
 		return CompletableFuture.completedFuture(null);
 	}
 
+	/**
+	 * Returns the executor to use in {@link #doResolve(ITextViewer, IProgressMonitor)} to resolve
+	 * the content of mining asynchronously. By default, it is the executor of the owner codemining
+	 * provider.
+	 *
+	 * @return the executor to use to resolve the content of mining.
+	 */
+	protected Executor getExecutor() {
+		if (provider instanceof AbstractCodeMiningProvider) {
+			return ((AbstractCodeMiningProvider) provider).getExecutor();
+		}
+		return CodeMiningExecutor.getDefault().getExecutor(provider);
+	}
+
 	@Override
 	public void setProgressMonitor(IProgressMonitor monitor) {
 		this.fMonitor= monitor;
 	}
 
+	/**
+	 * Returns the progress monitor of the refresh which has rendered this mining.
+	 *
+	 * @return the progress monitor of the refresh which has rendered this mining.
+	 */
+	protected IProgressMonitor getProgressMonitor() {
+		return fMonitor;
+	}
+
+	@Override
+	public synchronized CancellationToken getCancellationToken() {
+		return fToken;
+	}
+
 	@Override
 	public boolean isResolved() {
-		return (resolveFuture != null && resolveFuture.isDone());
+		// read once, since the future can be released by another thread.
+		CompletableFuture<Void> future= resolveFuture;
+		return (future != null && future.isDone());
 	}
 
 	@Override
-	public void dispose() {
-		if (resolveFuture != null) {
-			resolveFuture.cancel(true);
-			resolveFuture= null;
-		}
+	public synchronized void dispose() {
+		// stop the running resolve and cancel its future.
+		fToken.cancel();
+		resolveFuture= null;
 	}
 
 	/**
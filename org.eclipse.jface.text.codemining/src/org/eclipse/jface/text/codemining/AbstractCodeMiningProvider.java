@@ -10,6 +10,8 @@
  */
 package org.eclipse.jface.text.codemining;
 
+import java.util.concurrent.Executor;
+
 import org.eclipse.core.runtime.Assert;
 import org.eclipse.core.runtime.IAdaptable;
 
@@ -29,6 +31,16 @@ public abstract class AbstractCodeMiningProvider implements ICodeMiningProvider
 	 */
 	private IAdaptable context;
 
+	/**
+	 * The deadlines and circuit breaker given by the context, or <code>null</code> if none.
+	 */
+	private CodeMiningProviderPolicy fPolicy;
+
+	/**
+	 * true if the policy has been looked up in the context and false otherwise.
+	 */
+	private volatile boolean fPolicyComputed;
+
 	/**
 	 * Sets this codemining provider's context which is responsible to provide the adapters.
 	 *
@@ -46,6 +58,8 @@ public abstract class AbstractCodeMiningProvider implements ICodeMiningProvider
 	@Override
 	public void dispose() {
 		context= null;
+		fPolicy= null;
+		fPolicyComputed= false;
 	}
 
 	/**
@@ -62,4 +76,34 @@ public abstract class AbstractCodeMiningProvider implements ICodeMiningProvider
 			return context.getAdapter(adapterClass);
 		return null;
 	}
+
+	/**
+	 * Returns the deadlines and circuit breaker of this provider given by the context with the
+	 * {@link CodeMiningProviderPolicy} adapter. The adapter is looked up once, since the policy is
+	 * used when the code minings are painted.
+	 */
+	@Override
+	public CodeMiningProviderPolicy getPolicy() {
+		if (!fPolicyComputed) {
+			IAdaptable currentContext= context;
+			if (currentContext == null) {
+				return null;
+			}
+			fPolicy= currentContext.getAdapter(CodeMiningProviderPolicy.class);
+			fPolicyComputed= true;
+		}
+		return fPolicy;
+	}
+
+	/**
+	 * Returns the executor to use to provide and resolve the code minings of this provider. The
+	 * executor is given by the context with the {@link Executor} adapter, and otherwise by the
+	 * shared {@link CodeMiningExecutor}.
+	 *
+	 * @return the executor to use to provide and resolve the code minings of this provider.
+	 */
+	protected Executor getExecutor() {
+		Executor executor= getAdapter(Executor.class);
+		return executor != null ? executor : CodeMiningExecutor.getDefault().getExecutor(this);
+	}
 }
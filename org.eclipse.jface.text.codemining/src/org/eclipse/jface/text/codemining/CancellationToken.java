@@ -0,0 +1,140 @@
+/**
+ *  Copyright (c) 2017 Angelo ZERR.
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  Contributors:
+ *  Angelo Zerr <angelo.zerr@gmail.com> - [CodeMining] Provide CodeMining support with CodeMiningManager - Bug 527720
+ */
+package org.eclipse.jface.text.codemining;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.eclipse.core.runtime.Assert;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+
+/**
+ * Cancellation token given as {@link IProgressMonitor} to
+ * {@link ICodeMiningProvider#provideCodeMinings(org.eclipse.jface.text.ITextViewer, IProgressMonitor)}
+ * and to the resolve of {@link AbstractCodeMining}.
+ * <p>
+ * {@link #isCanceled()} is cheap to poll: it reads a volatile flag, without allocation and without
+ * throwing an exception. When the token is canceled, the cancellation is propagated to the
+ * registered futures, progress monitors and tokens, so that the tasks which are superseded (ex:
+ * a search) stop as soon as possible.
+ * </p>
+ *
+ * @since 3.13
+ */
+public class CancellationToken extends NullProgressMonitor {
+
+	/**
+	 * true if this token is canceled and false otherwise.
+	 */
+	private volatile boolean fCanceled;
+
+	/**
+	 * The actions to run when this token is canceled, or <code>null</code>.
+	 */
+	private List<Runnable> fCancelActions;
+
+	/**
+	 * Returns the cancellation token of the given progress monitor, or <code>null</code> if the
+	 * given progress monitor is not a cancellation token.
+	 *
+	 * @param monitor the progress monitor
+	 * @return the cancellation token of the given progress monitor, or <code>null</code>.
+	 */
+	public static CancellationToken of(IProgressMonitor monitor) {
+		return monitor instanceof CancellationToken ? (CancellationToken) monitor : null;
+	}
+
+	@Override
+	public boolean isCanceled() {
+		return fCanceled;
+	}
+
+	/**
+	 * Cancel this token when the given value is true. A canceled token cannot be reset.
+	 *
+	 * @param value true to cancel this token.
+	 */
+	@Override
+	public void setCanceled(boolean value) {
+		if (value) {
+			cancel();
+		}
+	}
+
+	/**
+	 * Cancel this token and propagate the cancellation to the registered futures, progress
+	 * monitors and tokens.
+	 */
+	public void cancel() {
+		List<Runnable> actions;
+		synchronized (this) {
+			if (fCanceled) {
+				return;
+			}
+			fCanceled= true;
+			actions= fCancelActions;
+			fCancelActions= null;
+		}
+		if (actions != null) {
+			for (Runnable action : actions) {
+				action.run();
+			}
+		}
+	}
+
+	/**
+	 * Run the given action when this token is canceled. The action is run immediately if this
+	 * token is already canceled.
+	 *
+	 * @param action the action to run when this token is canceled.
+	 */
+	public void onCancel(Runnable action) {
+		Assert.isNotNull(action);
+		synchronized (this) {
+			if (!fCanceled) {
+				if (fCancelActions == null) {
+					fCancelActions= new ArrayList<>();
+				}
+				fCancelActions.add(action);
+				return;
+			}
+		}
+		action.run();
+	}
+
+	/**
+	 * Cancel the given future when this token is canceled.
+	 *
+	 * @param future the future to cancel
+	 * @return the given future.
+	 */
+	public <T> CompletableFuture<T> register(CompletableFuture<T> future) {
+		if (future != null && !future.isDone()) {
+			onCancel(() -> future.cancel(true));
+		}
+		return future;
+	}
+
+	/**
+	 * Cancel the given progress monitor when this token is canceled.
+	 *
+	 * @param monitor the progress monitor to cancel
+	 * @return the given progress monitor.
+	 */
+	public IProgressMonitor register(IProgressMonitor monitor) {
+		if (monitor != null && monitor != this) {
+			onCancel(() -> monitor.setCanceled(true));
+		}
+		return monitor;
+	}
+}
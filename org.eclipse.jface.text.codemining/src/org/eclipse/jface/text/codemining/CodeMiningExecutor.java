@@ -0,0 +1,329 @@
+/**
+ *  Copyright (c) 2017 Angelo ZERR.
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  Contributors:
+ *  Angelo Zerr <angelo.zerr@gmail.com> - [CodeMining] Provide CodeMining support with CodeMiningManager - Bug 527720
+ */
+package org.eclipse.jface.text.codemining;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.WeakHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.core.runtime.Assert;
+
+/**
+ * Bounded {@link Executor} used to provide and resolve code minings, instead of the
+ * {@link ForkJoinPool#commonPool()} where blocking searches starve the other tasks.
+ * <p>
+ * The tasks are executed by a delegate executor, by default a pool of named daemon threads, which
+ * can be replaced (ex: with a virtual thread executor on newer JVMs). Each code mining provider
+ * uses its own executor given by {@link #getExecutor(ICodeMiningProvider)} which limits the number
+ * of tasks of the provider which are executed at the same time.
+ * </p>
+ *
+ * @since 3.13
+ */
+public class CodeMiningExecutor implements Executor {
+
+	/**
+	 * The default maximum number of tasks of a code mining provider which are executed at the same
+	 * time.
+	 */
+	public static final int DEFAULT_PROVIDER_CONCURRENCY= 2;
+
+	/**
+	 * The shared executor.
+	 */
+	private static CodeMiningExecutor fgDefault;
+
+	/**
+	 * Executor which limits the number of tasks of a code mining provider which are executed at the
+	 * same time.
+	 */
+	private class ProviderExecutor implements Executor {
+
+		private final Queue<Runnable> fTasks= new ArrayDeque<>();
+
+		private int fMaxConcurrency;
+
+		private int fRunning;
+
+		ProviderExecutor(int maxConcurrency) {
+			fMaxConcurrency= maxConcurrency;
+		}
+
+		@Override
+		public void execute(Runnable command) {
+			Assert.isNotNull(command);
+			fQueued.incrementAndGet();
+			synchronized (this) {
+				fTasks.add(command);
+			}
+			drain();
+		}
+
+		synchronized void setMaxConcurrency(int maxConcurrency) {
+			fMaxConcurrency= maxConcurrency;
+		}
+
+		private void drain() {
+			while (true) {
+				Runnable task;
+				synchronized (this) {
+					if (fRunning >= fMaxConcurrency || fTasks.isEmpty()) {
+						return;
+					}
+					task= fTasks.poll();
+					fRunning++;
+				}
+				try {
+					submit(() -> {
+						try {
+							task.run();
+						} finally {
+							synchronized (this) {
+								fRunning--;
+							}
+							try {
+								drain();
+							} catch (RejectedExecutionException e) {
+								// the delegate executor is shut down, the next tasks stay queued.
+							}
+						}
+					});
+				} catch (RejectedExecutionException e) {
+					List<Runnable> rejected;
+					synchronized (this) {
+						fRunning--;
+						if (getDefault() == CodeMiningExecutor.this) {
+							throw e;
+						}
+						rejected= new ArrayList<>(fTasks.size() + 1);
+						rejected.add(task);
+						rejected.addAll(fTasks);
+						fTasks.clear();
+					}
+					// this executor has been replaced by setDefault and shut down, the tasks which
+					// are not executed are executed by the new shared executor so that their
+					// futures are completed. The rejected task is already uncounted by submit.
+					fQueued.addAndGet(1 - rejected.size());
+					CodeMiningExecutor current= getDefault();
+					for (Runnable rejectedTask : rejected) {
+						current.execute(rejectedTask);
+					}
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * The name of this executor.
+	 */
+	private final String fName;
+
+	/**
+	 * The executor which executes the tasks.
+	 */
+	private final Executor fDelegate;
+
+	/**
+	 * The number of tasks which are waiting to be executed.
+	 */
+	private final AtomicInteger fQueued= new AtomicInteger();
+
+	/**
+	 * The number of tasks which are executing.
+	 */
+	private final AtomicInteger fActive= new AtomicInteger();
+
+	/**
+	 * The executors by code mining provider.
+	 */
+	private final Map<ICodeMiningProvider, ProviderExecutor> fProviderExecutors= Collections
+			.synchronizedMap(new WeakHashMap<>());
+
+	/**
+	 * Creates a code mining executor with a pool of the given maximum number of named daemon
+	 * threads.
+	 *
+	 * @param name the name of the executor, used to name the threads.
+	 * @param maxThreads the maximum number of threads.
+	 */
+	public CodeMiningExecutor(String name, int maxThreads) {
+		this(name, createThreadPool(name, maxThreads));
+	}
+
+	/**
+	 * Creates a code mining executor which executes the tasks with the given delegate executor.
+	 *
+	 * @param name the name of the executor.
+	 * @param delegate the executor which executes the tasks.
+	 */
+	public CodeMiningExecutor(String name, Executor delegate) {
+		Assert.isNotNull(name);
+		Assert.isNotNull(delegate);
+		fName= name;
+		fDelegate= delegate;
+	}
+
+	/**
+	 * Returns the shared code mining executor.
+	 *
+	 * @return the shared code mining executor.
+	 */
+	public static synchronized CodeMiningExecutor getDefault() {
+		if (fgDefault == null) {
+			fgDefault= new CodeMiningExecutor("CodeMining", Math.max(2, Runtime.getRuntime().availableProcessors() / 2)); //$NON-NLS-1$
+		}
+		return fgDefault;
+	}
+
+	/**
+	 * Replaces the shared code mining executor. The previous shared executor is shut down: its
+	 * tasks which are executing are finished and its queued tasks are executed by the new shared
+	 * executor.
+	 *
+	 * @param executor the new shared code mining executor.
+	 */
+	public static void setDefault(CodeMiningExecutor executor) {
+		Assert.isNotNull(executor);
+		CodeMiningExecutor old;
+		synchronized (CodeMiningExecutor.class) {
+			old= fgDefault;
+			fgDefault= executor;
+		}
+		if (old != null && old != executor) {
+			old.shutdown();
+		}
+	}
+
+	private static ExecutorService createThreadPool(String name, int maxThreads) {
+		AtomicInteger threadNumber= new AtomicInteger();
+		ThreadFactory factory= r -> {
+			Thread thread= new Thread(r, name + "-" + threadNumber.incrementAndGet()); //$NON-NLS-1$
+			thread.setDaemon(true);
+			return thread;
+		};
+		ThreadPoolExecutor pool= new ThreadPoolExecutor(maxThreads, maxThreads, 60L, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<>(), factory);
+		pool.allowCoreThreadTimeOut(true);
+		return pool;
+	}
+
+	@Override
+	public void execute(Runnable command) {
+		Assert.isNotNull(command);
+		fQueued.incrementAndGet();
+		submit(command);
+	}
+
+	/**
+	 * Submit the given task, which is already counted as queued, to the delegate executor.
+	 *
+	 * @param command the task to execute.
+	 */
+	private void submit(Runnable command) {
+		try {
+			fDelegate.execute(() -> {
+				fQueued.decrementAndGet();
+				fActive.incrementAndGet();
+				try {
+					command.run();
+				} finally {
+					fActive.decrementAndGet();
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			fQueued.decrementAndGet();
+			throw e;
+		}
+	}
+
+	/**
+	 * Returns the executor to use for the given code mining provider. This executor executes the
+	 * tasks with this code mining executor by limiting the number of tasks of the provider which
+	 * are executed at the same time.
+	 *
+	 * @param provider the code mining provider.
+	 * @return the executor to use for the given code mining provider.
+	 */
+	public Executor getExecutor(ICodeMiningProvider provider) {
+		Assert.isNotNull(provider);
+		return fProviderExecutors.computeIfAbsent(provider, p -> new ProviderExecutor(DEFAULT_PROVIDER_CONCURRENCY));
+	}
+
+	/**
+	 * Set the maximum number of tasks of the given code mining provider which are executed at the
+	 * same time.
+	 *
+	 * @param provider the code mining provider.
+	 * @param maxConcurrency the maximum number of tasks executed at the same time.
+	 */
+	public void setProviderConcurrency(ICodeMiningProvider provider, int maxConcurrency) {
+		Assert.isLegal(maxConcurrency > 0);
+		ProviderExecutor executor= (ProviderExecutor) getExecutor(provider);
+		executor.setMaxConcurrency(maxConcurrency);
+		executor.drain();
+	}
+
+	/**
+	 * Returns the name of this executor.
+	 *
+	 * @return the name of this executor.
+	 */
+	public String getName() {
+		return fName;
+	}
+
+	/**
+	 * Returns the number of tasks which are waiting to be executed.
+	 *
+	 * @return the number of tasks which are waiting to be executed.
+	 */
+	public int getQueueSize() {
+		return fQueued.get();
+	}
+
+	/**
+	 * Returns the number of tasks which are executing.
+	 *
+	 * @return the number of tasks which are executing.
+	 */
+	public int getActiveCount() {
+		return fActive.get();
+	}
+
+	/**
+	 * Shut down the delegate executor if it is an {@link ExecutorService}. The tasks which are
+	 * executing are not interrupted.
+	 */
+	public void shutdown() {
+		if (fDelegate instanceof ExecutorService) {
+			((ExecutorService) fDelegate).shutdown();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return fName + " [active=" + getActiveCount() + ", queued=" + getQueueSize() + "]"; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+	}
+}
@@ -0,0 +1,243 @@
+/**
+ *  Copyright (c) 2017 Angelo ZERR.
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  Contributors:
+ *  Angelo Zerr <angelo.zerr@gmail.com> - [CodeMining] Provide CodeMining support with CodeMiningManager - Bug 527720
+ */
+package org.eclipse.jface.text.codemining;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.eclipse.core.runtime.Assert;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+
+import org.eclipse.jface.util.Policy;
+
+/**
+ * Deadlines and circuit breaker of a code mining provider.
+ * <p>
+ * The futures of {@link ICodeMiningProvider#provideCodeMinings} and {@link ICodeMining#resolve}
+ * which are not completed before their deadline are completed exceptionally with a {@link TimeoutException}. When the
+ * provider reaches a given number of consecutive timeouts, the circuit breaker is opened: the
+ * provider is skipped for a cool-down period and this is logged once.
+ * </p>
+ *
+ * @since 3.13
+ */
+public class CodeMiningProviderPolicy {
+
+	/**
+	 * The default number of consecutive timeouts which opens the circuit breaker.
+	 */
+	public static final int DEFAULT_FAILURE_THRESHOLD= 3;
+
+	/**
+	 * The default cool-down period (in milliseconds) while the provider is skipped.
+	 */
+	public static final long DEFAULT_COOL_DOWN= 30000;
+
+	/**
+	 * The timer used to complete the futures which reach their deadline.
+	 */
+	private static ScheduledExecutorService fgTimer;
+
+	/**
+	 * The name of the provider, used to log.
+	 */
+	private final String fName;
+
+	/**
+	 * The deadline (in milliseconds) of the provide of code minings, 0 if none.
+	 */
+	private final long fProvideTimeout;
+
+	/**
+	 * The deadline (in milliseconds) of the resolve of a code mining, 0 if none.
+	 */
+	private final long fResolveTimeout;
+
+	/**
+	 * The number of consecutive timeouts which opens the circuit breaker.
+	 */
+	private final int fFailureThreshold;
+
+	/**
+	 * The cool-down period (in milliseconds) while the provider is skipped.
+	 */
+	private final long fCoolDown;
+
+	/**
+	 * The number of consecutive timeouts.
+	 */
+	private int fConsecutiveTimeouts;
+
+	/**
+	 * The time (in milliseconds) until which the circuit breaker is open.
+	 */
+	private long fOpenUntil;
+
+	/**
+	 * Creates a policy with the given deadlines and the default circuit breaker.
+	 *
+	 * @param name the name of the provider, used to log.
+	 * @param provideTimeout the deadline (in milliseconds) of the provide of code minings, 0 if
+	 *            none.
+	 * @param resolveTimeout the deadline (in milliseconds) of the resolve of a code mining, 0 if
+	 *            none.
+	 */
+	public CodeMiningProviderPolicy(String name, long provideTimeout, long resolveTimeout) {
+		this(name, provideTimeout, resolveTimeout, DEFAULT_FAILURE_THRESHOLD, DEFAULT_COOL_DOWN);
+	}
+
+	/**
+	 * Creates a policy with the given deadlines and circuit breaker.
+	 *
+	 * @param name the name of the provider, used to log.
+	 * @param provideTimeout the deadline (in milliseconds) of the provide of code minings, 0 if
+	 *            none.
+	 * @param resolveTimeout the deadline (in milliseconds) of the resolve of a code mining, 0 if
+	 *            none.
+	 * @param failureThreshold the number of consecutive timeouts which opens the circuit breaker.
+	 * @param coolDown the cool-down period (in milliseconds) while the provider is skipped.
+	 */
+	public CodeMiningProviderPolicy(String name, long provideTimeout, long resolveTimeout, int failureThreshold,
+			long coolDown) {
+		Assert.isNotNull(name);
+		Assert.isLegal(failureThreshold > 0);
+		fName= name;
+		fProvideTimeout= Math.max(0, provideTimeout);
+		fResolveTimeout= Math.max(0, resolveTimeout);
+		fFailureThreshold= failureThreshold;
+		fCoolDown= Math.max(0, coolDown);
+	}
+
+	/**
+	 * Returns true if the circuit breaker is open and the provider must be skipped, and false
+	 * otherwise.
+	 *
+	 * @return true if the circuit breaker is open and the provider must be skipped, and false
+	 *         otherwise.
+	 */
+	public synchronized boolean isOpen() {
+		return fOpenUntil > System.currentTimeMillis();
+	}
+
+	/**
+	 * Returns a future which completes like the given future of the provide of code minings, or
+	 * exceptionally with a {@link TimeoutException} when the deadline is reached.
+	 *
+	 * @param future the future of the provide of code minings.
+	 * @return a future which completes like the given future or exceptionally with a
+	 *         {@link TimeoutException} when the deadline is reached.
+	 */
+	public <T> CompletableFuture<T> guardProvide(CompletableFuture<T> future) {
+		return guard(future, fProvideTimeout, true);
+	}
+
+	/**
+	 * Returns a future which completes like the given future of the resolve of a code mining, or
+	 * exceptionally with a {@link TimeoutException} when the deadline is reached.
+	 *
+	 * @param future the future of the resolve of a code mining.
+	 * @return a future which completes like the given future or exceptionally with a
+	 *         {@link TimeoutException} when the deadline is reached.
+	 */
+	public <T> CompletableFuture<T> guardResolve(CompletableFuture<T> future) {
+		// the resolve future is cached by the mining, don't cancel it.
+		return guard(future, fResolveTimeout, false);
+	}
+
+	private <T> CompletableFuture<T> guard(CompletableFuture<T> future, long timeout, boolean cancel) {
+		if (timeout <= 0 || future.isDone()) {
+			return future;
+		}
+		CompletableFuture<T> result= new CompletableFuture<>();
+		ScheduledFuture<?> deadline= getTimer().schedule(() -> {
+			if (result.completeExceptionally(new TimeoutException())) {
+				recordTimeout();
+				if (cancel) {
+					future.cancel(true);
+				}
+			}
+		}, timeout, TimeUnit.MILLISECONDS);
+		future.whenComplete((value, error) -> {
+			// the future is completed before its deadline, release the timer task.
+			deadline.cancel(false);
+			if (error != null) {
+				result.completeExceptionally(error);
+			} else if (result.complete(value)) {
+				recordSuccess();
+			}
+		});
+		return result;
+	}
+
+	private synchronized void recordSuccess() {
+		fConsecutiveTimeouts= 0;
+	}
+
+	private void recordTimeout() {
+		synchronized (this) {
+			fConsecutiveTimeouts++;
+			if (fConsecutiveTimeouts < fFailureThreshold || isOpen()) {
+				return;
+			}
+			fOpenUntil= System.currentTimeMillis() + fCoolDown;
+			// after the cool-down, one more timeout opens again the circuit breaker.
+			fConsecutiveTimeouts= fFailureThreshold - 1;
+		}
+		Policy.getLog().log(new Status(IStatus.WARNING, Policy.JFACE, "Code mining provider '" + fName //$NON-NLS-1$
+				+ "' reached its deadline " + fFailureThreshold + " times, it is skipped for " + fCoolDown + " ms")); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+	}
+
+	private static synchronized ScheduledExecutorService getTimer() {
+		if (fgTimer == null) {
+			ScheduledThreadPoolExecutor timer= new ScheduledThreadPoolExecutor(1, r -> {
+				Thread thread= new Thread(r, "CodeMining-Timeout"); //$NON-NLS-1$
+				thread.setDaemon(true);
+				return thread;
+			});
+			// the deadlines of the futures completed in time are removed from the queue.
+			timer.setRemoveOnCancelPolicy(true);
+			fgTimer= timer;
+		}
+		return fgTimer;
+	}
+
+	/**
+	 * Returns the name of the provider.
+	 *
+	 * @return the name of the provider.
+	 */
+	public String getName() {
+		return fName;
+	}
+
+	/**
+	 * Returns the deadline (in milliseconds) of the provide of code minings, 0 if none.
+	 *
+	 * @return the deadline (in milliseconds) of the provide of code minings, 0 if none.
+	 */
+	public long getProvideTimeout() {
+		return fProvideTimeout;
+	}
+
+	/**
+	 * Returns the deadline (in milliseconds) of the resolve of a code mining, 0 if none.
+	 *
+	 * @return the deadline (in milliseconds) of the resolve of a code mining, 0 if none.
+	 */
+	public long getResolveTimeout() {
+		return fResolveTimeout;
+	}
+}
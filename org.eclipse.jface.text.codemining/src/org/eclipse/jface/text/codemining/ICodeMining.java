@@ -47,6 +47,20 @@ public interface ICodeMining {
 	 */
 	ICodeMiningProvider getProvider();
 
+	/**
+	 * Returns the stable key of this mining, or <code>null</code> if this mining has none. The key
+	 * identifies the element (ex: the handle of a method or a key of its position) and the kind of
+	 * content (ex: references, implementations) of this mining, so that the resolved content of a
+	 * mining of the same provider and with an equal key can be reused by the mining which replaces
+	 * it when the code minings are refreshed. By default, it returns <code>null</code>.
+	 *
+	 * @return the stable key of this mining, or <code>null</code> if this mining has none.
+	 * @see ICodeMiningProvider#isResolvedContentValid(ICodeMining, ICodeMining)
+	 */
+	default Object getKey() {
+		return null;
+	}
+
 	/**
 	 * Returns the label may be set early in the class lifecycle, or upon completion of the future
 	 * provided by {@link #resolve(ITextViewer)} operation.
@@ -75,6 +89,24 @@ public interface ICodeMining {
 	 */
 	CompletableFuture<Void> resolve(ITextViewer viewer);
 
+	/**
+	 * Returns the future to resolve the content of mining which is computed by the given batch
+	 * resolve of its provider
+	 * {@link ICodeMiningProvider#resolveCodeMinings(ITextViewer, java.util.List, IProgressMonitor)}.
+	 * By default, the mining is resolved with {@link #resolve(ITextViewer)} when the batch is
+	 * completed.
+	 *
+	 * @param viewer the viewer.
+	 * @param batch the future of the batch resolve of the provider.
+	 * @return the future to resolve the content of mining.
+	 */
+	default CompletableFuture<Void> resolve(ITextViewer viewer, CompletableFuture<Void> batch) {
+		return batch.handle((result, error) -> (Void) null).thenCompose(result -> {
+			CompletableFuture<Void> future= resolve(viewer);
+			return future != null ? future : CompletableFuture.completedFuture(null);
+		});
+	}
+
 	/**
 	 * Returns whether the content mining is resolved. If it is not resolved,
 	 * {{@link #resolve(ITextViewer)}} will be invoked later, triggering the future to resolve
@@ -86,6 +118,20 @@ public interface ICodeMining {
 	 */
 	boolean isResolved();
 
+	/**
+	 * Reuse the resolved content of the given previous mining, which has the same provider and an
+	 * equal key, and whose content is still valid for this mining. This mining is then resolved
+	 * without calling {@link #resolve(ITextViewer)}. By default, it does nothing and returns
+	 * <code>false</code>.
+	 *
+	 * @param previous the resolved mining which is replaced by this mining.
+	 * @return true if this mining is resolved with the content of the given previous mining and
+	 *         false otherwise.
+	 */
+	default boolean reuseResolvedContent(ICodeMining previous) {
+		return false;
+	}
+
 	/**
 	 * Draw the code mining.
 	 *
@@ -98,6 +144,26 @@ public interface ICodeMining {
 	 */
 	Point draw(GC gc, StyledText textWidget, Color color, int x, int y);
 
+	/**
+	 * Release the resolved content (ex: label) of this mining to keep only its position. The
+	 * mining is resolved again with {@link #resolve(ITextViewer)} when its line comes back into
+	 * view. By default, it does nothing.
+	 */
+	default void release() {
+		// Do nothing
+	}
+
+	/**
+	 * Returns the cancellation token which is canceled when this mining is disposed, or
+	 * <code>null</code> if this mining has none.
+	 *
+	 * @return the cancellation token which is canceled when this mining is disposed, or
+	 *         <code>null</code> if this mining has none.
+	 */
+	default CancellationToken getCancellationToken() {
+		return null;
+	}
+
 	/**
 	 * Dispose the mining. Typically shuts down or cancels all related asynchronous operations.
 	 */
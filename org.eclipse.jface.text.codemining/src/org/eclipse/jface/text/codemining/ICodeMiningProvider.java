@@ -12,10 +12,13 @@ package org.eclipse.jface.text.codemining;
 
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
 
 import org.eclipse.core.runtime.IProgressMonitor;
 
+import org.eclipse.jface.text.IRegion;
 import org.eclipse.jface.text.ITextViewer;
+import org.eclipse.jface.text.Position;
 
 /**
  * A code mining provider adds minings {@link ICodeMining} to source text. The mining will be shown
@@ -31,6 +34,12 @@ public interface ICodeMiningProvider {
 	 * only return code mining objects with the position and implement resolve
 	 * {@link ICodeMining#resolve(ITextViewer, IProgressMonitor)}.
 	 *
+	 * <p>
+	 * The given monitor is typically a {@link CancellationToken} which is canceled when the
+	 * refresh is superseded: {@link IProgressMonitor#isCanceled()} is cheap to poll and doesn't
+	 * throw an exception.
+	 * </p>
+	 *
 	 * @param viewer the viewer in which the command was invoked.
 	 * @param monitor A progress monitor.
 	 * @return An array of future of code minings that resolves to such. The lack of a result can be
@@ -38,6 +47,99 @@ public interface ICodeMiningProvider {
 	 */
 	CompletableFuture<List<? extends ICodeMining>> provideCodeMinings(ITextViewer viewer, IProgressMonitor monitor);
 
+	/**
+	 * Compute a list of code minings {@link ICodeMining} which are located in the given region.
+	 * This method is used by the incremental refresh of code minings, where only the lines which
+	 * have changed must be re-collected.
+	 * <p>
+	 * By default, the code minings of the whole document are computed with
+	 * {@link #provideCodeMinings(ITextViewer, IProgressMonitor)} and filtered with the given
+	 * region. Implementors which are able to restrict their computation to a part of the document
+	 * should override this method.
+	 * </p>
+	 *
+	 * @param viewer the viewer in which the command was invoked.
+	 * @param region the region (covering whole lines) where code minings must be computed.
+	 * @param monitor A progress monitor.
+	 * @return An array of future of code minings located in the given region that resolves to
+	 *         such. The lack of a result can be signaled by returning null, or an empty array.
+	 */
+	default CompletableFuture<List<? extends ICodeMining>> provideCodeMinings(ITextViewer viewer, IRegion region,
+			IProgressMonitor monitor) {
+		CompletableFuture<List<? extends ICodeMining>> future= provideCodeMinings(viewer, monitor);
+		if (future == null) {
+			return null;
+		}
+		return future.thenApply(minings -> {
+			if (minings == null) {
+				return null;
+			}
+			return minings.stream().filter(mining -> {
+				Position position= mining.getPosition();
+				int start= region.getOffset();
+				int end= start + region.getLength();
+				if (position.getOffset() >= start && position.getOffset() <= end) {
+					return true;
+				}
+				// the mining is outside the region, it will be never used.
+				mining.dispose();
+				return false;
+			}).collect(Collectors.toList());
+		});
+	}
+
+	/**
+	 * Resolve with one batch the content of the given code minings created by this provider, for
+	 * instance with one index query or one pass over the document instead of one per code mining.
+	 * This method is called with the unresolved code minings of this provider which are located in
+	 * the visible lines and in the band around them.
+	 * <p>
+	 * The returned future must be completed when the content (ex: label) of the given code minings
+	 * is computed: the code minings are then resolved with
+	 * {@link ICodeMining#resolve(ITextViewer, CompletableFuture)}. By default, the batch resolve is
+	 * not supported and this method returns <code>null</code>: the code minings are resolved one by
+	 * one with {@link ICodeMining#resolve(ITextViewer)}.
+	 * </p>
+	 *
+	 * @param viewer the viewer in which the command was invoked.
+	 * @param minings the unresolved code minings created by this provider.
+	 * @param monitor A progress monitor.
+	 * @return the future which is completed when the content of the given code minings is
+	 *         computed, or <code>null</code> if the code minings must be resolved one by one.
+	 */
+	default CompletableFuture<Void> resolveCodeMinings(ITextViewer viewer, List<ICodeMining> minings,
+			IProgressMonitor monitor) {
+		return null;
+	}
+
+	/**
+	 * Returns true if the resolved content of the given previous code mining is still valid for the
+	 * given code mining which replaces it and false otherwise. Both code minings are created by
+	 * this provider and have an equal {@link ICodeMining#getKey()}. When this method returns true,
+	 * the code mining reuses the resolved content with
+	 * {@link ICodeMining#reuseResolvedContent(ICodeMining)} instead of resolving it again. By
+	 * default, it returns <code>false</code>.
+	 *
+	 * @param previous the resolved code mining which is replaced.
+	 * @param mining the code mining which replaces the previous code mining.
+	 * @return true if the resolved content of the given previous code mining is still valid for
+	 *         the given code mining and false otherwise.
+	 */
+	default boolean isResolvedContentValid(ICodeMining previous, ICodeMining mining) {
+		return false;
+	}
+
+	/**
+	 * Returns the deadlines and circuit breaker of this provider, or <code>null</code> if this
+	 * provider has none.
+	 *
+	 * @return the deadlines and circuit breaker of this provider, or <code>null</code> if this
+	 *         provider has none.
+	 */
+	default CodeMiningProviderPolicy getPolicy() {
+		return null;
+	}
+
 	/**
 	 * Dispose code mining provider.
 	 */
@@ -71,14 +71,15 @@ public abstract class AbstractInlinedAnnotation extends Annotation {
 	}
 
 	/**
-	 * Redraw the inlined annotation.
+	 * Redraw the inlined annotation. The redraws of the annotations of a same text widget are
+	 * coalesced and done at most once per frame.
 	 */
 	public void redraw() {
 		StyledText text= getTextWidget();
-		InlinedAnnotationSupport.runInUIThread(text, (t) -> {
-			Position pos= getPosition();
-			InlinedAnnotationDrawingStrategy.draw(this, null, t, pos.getOffset(), pos.getLength(), null);
-		});
+		if (text == null || text.isDisposed()) {
+			return;
+		}
+		InlinedAnnotationRedrawQueue.getQueue(text).schedule(this);
 	}
 
 	/**
@@ -0,0 +1,204 @@
+/**
+ *  Copyright (c) 2017 Angelo ZERR.
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  Contributors:
+ *  Angelo Zerr <angelo.zerr@gmail.com> - [CodeMining] Provide inline annotations support - Bug 527675
+ */
+package org.eclipse.jface.text.source.inlined;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.eclipse.swt.graphics.Font;
+import org.eclipse.swt.graphics.FontMetrics;
+import org.eclipse.swt.graphics.GC;
+
+/**
+ * Cache of the text metrics (average char width, height, descent and string widths) by
+ * {@link Font}, used to compute the size of the inlined annotations without creating a
+ * {@link GC} for each computation.
+ * <p>
+ * The fonts and the string widths of a font are evicted with a LRU policy. This class must be
+ * called from the UI Thread.
+ * </p>
+ *
+ * @since 3.13.0
+ */
+public final class FontMetricsCache {
+
+	/**
+	 * The maximum number of fonts kept in the cache.
+	 */
+	private static final int MAX_FONTS= 16;
+
+	/**
+	 * The maximum number of string widths kept in the cache for a font.
+	 */
+	private static final int MAX_STRING_WIDTHS= 256;
+
+	/**
+	 * Text metrics of a font.
+	 */
+	private static class Metrics {
+
+		/**
+		 * The font given by the caller whose metrics are computed.
+		 */
+		final Font font;
+
+		/**
+		 * The average char width of the font.
+		 */
+		final int averageCharWidth;
+
+		/**
+		 * The height of the font.
+		 */
+		final int height;
+
+		/**
+		 * The descent of the font.
+		 */
+		final int descent;
+
+		/**
+		 * The string widths of the font by string, or <code>null</code> if none string width has
+		 * been computed.
+		 */
+		Map<String, Integer> stringWidths;
+
+		Metrics(Font font, FontMetrics fontMetrics) {
+			this.font= font;
+			this.averageCharWidth= fontMetrics.getAverageCharWidth();
+			this.height= fontMetrics.getHeight();
+			this.descent= fontMetrics.getDescent();
+		}
+	}
+
+	/**
+	 * The text metrics by font, in access order.
+	 */
+	private static final Map<Font, Metrics> fgMetrics= new LinkedHashMap<Font, Metrics>(MAX_FONTS, 0.75f, true) {
+
+		private static final long serialVersionUID= 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Font, Metrics> eldest) {
+			return size() > MAX_FONTS;
+		}
+	};
+
+	private FontMetricsCache() {
+	}
+
+	/**
+	 * Returns the average char width of the given font.
+	 *
+	 * @param font the font
+	 * @return the average char width of the given font.
+	 */
+	public static int getAverageCharWidth(Font font) {
+		return getMetrics(font).averageCharWidth;
+	}
+
+	/**
+	 * Returns the height of the given font.
+	 *
+	 * @param font the font
+	 * @return the height of the given font.
+	 */
+	public static int getHeight(Font font) {
+		return getMetrics(font).height;
+	}
+
+	/**
+	 * Returns the descent of the given font.
+	 *
+	 * @param font the font
+	 * @return the descent of the given font.
+	 */
+	public static int getDescent(Font font) {
+		return getMetrics(font).descent;
+	}
+
+	/**
+	 * Returns the width of the given string drawn with the given font, like
+	 * {@link GC#stringExtent(String)}.
+	 *
+	 * @param font the font
+	 * @param text the string
+	 * @return the width of the given string drawn with the given font.
+	 */
+	@SuppressWarnings("boxing")
+	public static int getStringWidth(Font font, String text) {
+		Metrics metrics= getMetrics(font);
+		synchronized (fgMetrics) {
+			if (metrics.stringWidths == null) {
+				metrics.stringWidths= new LinkedHashMap<String, Integer>(16, 0.75f, true) {
+
+					private static final long serialVersionUID= 1L;
+
+					@Override
+					protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+						return size() > MAX_STRING_WIDTHS;
+					}
+				};
+			}
+			Integer width= metrics.stringWidths.get(text);
+			if (width == null) {
+				GC gc= new GC(font.getDevice());
+				try {
+					gc.setFont(font);
+					width= gc.stringExtent(text).x;
+				} finally {
+					gc.dispose();
+				}
+				metrics.stringWidths.put(text, width);
+			}
+			return width;
+		}
+	}
+
+	/**
+	 * Remove the text metrics of all fonts from the cache. This method should be called when the
+	 * fonts are changed (ex: zoom).
+	 */
+	public static void invalidate() {
+		synchronized (fgMetrics) {
+			fgMetrics.clear();
+		}
+	}
+
+	/**
+	 * Returns the text metrics of the given font and compute them if needed.
+	 *
+	 * @param font the font
+	 * @return the text metrics of the given font.
+	 */
+	private static Metrics getMetrics(Font font) {
+		synchronized (fgMetrics) {
+			Metrics metrics= fgMetrics.get(font);
+			// the handle of a disposed font could be reused by another font.
+			if (metrics == null || metrics.font.isDisposed()) {
+				// evict the metrics of the disposed fonts, so that the fonts which are disposed
+				// (ex: closed editor) don't wait for the LRU policy to be removed. The key of the
+				// metrics is then the given font.
+				fgMetrics.values().removeIf(m -> m.font.isDisposed());
+				fgMetrics.remove(font);
+				GC gc= new GC(font.getDevice());
+				try {
+					gc.setFont(font);
+					metrics= new Metrics(font, gc.getFontMetrics());
+				} finally {
+					gc.dispose();
+				}
+				fgMetrics.put(font, metrics);
+			}
+			return metrics;
+		}
+	}
+}
@@ -50,11 +50,10 @@ class InlinedAnnotationDrawingStrategy implements IDrawingStrategy {
 	public static void draw(AbstractInlinedAnnotation annotation, GC gc, StyledText textWidget, int offset, int length,
 			Color color) {
 		if (annotation.isMarkedDeleted()) {
-			// When annotation is deleted, redraw the styled text to hide old draw of
-			// annotations
-			textWidget.redraw();
-			// update caret offset since line spacing has changed.
-			textWidget.setCaretOffset(textWidget.getCaretOffset());
+			// When annotation is deleted, redraw the area of the styled text where the annotation
+			// was drawn to hide old draw of annotations. The redraws of the deleted annotations are
+			// coalesced with the redraw queue.
+			InlinedAnnotationRedrawQueue.getQueue(textWidget).schedule(annotation);
 			return;
 		}
 		if (annotation instanceof LineHeaderAnnotation) {
@@ -64,6 +63,53 @@ class InlinedAnnotationDrawingStrategy implements IDrawingStrategy {
 		}
 	}
 
+	/**
+	 * Returns the bounds of the area of the text widget where the given annotation is drawn, or
+	 * <code>null</code> if the annotation cannot be located.
+	 * <p>
+	 * For a deleted line header annotation, the area goes to the bottom of the client area since
+	 * the lines located after the removed line spacing are moved up. For a deleted annotation which
+	 * cannot be located, the area is the whole client area.
+	 * </p>
+	 *
+	 * @param annotation the inlined annotation
+	 * @param textWidget the text widget where the annotation is drawn
+	 * @return the bounds of the area where the given annotation is drawn, or <code>null</code> if
+	 *         the annotation cannot be located.
+	 */
+	static Rectangle getRedrawBounds(AbstractInlinedAnnotation annotation, StyledText textWidget) {
+		int offset= annotation.getPosition().getOffset();
+		Rectangle client= textWidget.getClientArea();
+		int lineIndex;
+		try {
+			lineIndex= textWidget.getLineAtOffset(offset);
+		} catch (Exception e) {
+			return annotation.isMarkedDeleted() ? client : null;
+		}
+		int width= client.width;
+		if (annotation instanceof LineHeaderAnnotation) {
+			if (lineIndex == 0) {
+				// There are none previous line, the annotation is not drawn
+				return null;
+			}
+			// the annotation is drawn in the line spacing of the previous line.
+			int top= textWidget.getLinePixel(lineIndex - 1);
+			if (annotation.isMarkedDeleted()) {
+				// the lines below the removed line spacing are moved up.
+				top= Math.max(top, 0);
+				return new Rectangle(0, top, width, Math.max(client.height - top, 0));
+			}
+			return new Rectangle(0, top, width, textWidget.getLinePixel(lineIndex) - top);
+		}
+		if (offset >= textWidget.getCharCount()) {
+			// the offset is stale or at the end of the document, there are no text bounds to
+			// compute, redraw the whole client area.
+			return client;
+		}
+		Rectangle bounds= textWidget.getTextBounds(offset, offset);
+		return new Rectangle(0, bounds.y, width, bounds.height);
+	}
+
 	/**
 	 * Draw the line header annotation in the line spacing of the previous line.
 	 *
@@ -85,15 +131,21 @@ class InlinedAnnotationDrawingStrategy implements IDrawingStrategy {
 		}
 		int previousLineIndex= lineIndex - 1;
 		if (gc != null) {
-			// Compute the location of the annotation
-			int x= textWidget.getLocationAtOffset(offset).x;
+			// Compute the y of the annotation with the line pixel (which is cached by the styled
+			// text) instead of the location of the offset (which requires the layout of the line).
 			int y= 0;
 			int height= annotation.getHeight();
 			if (lineIndex > 0) {
-				int previousOffset= textWidget.getOffsetAtLine(previousLineIndex);
-				y= textWidget.getLocationAtOffset(previousOffset).y + height;
+				y= textWidget.getLinePixel(previousLineIndex) + height;
 			}
 			Rectangle clipping= gc.getClipping();
+			if (y >= clipping.y + clipping.height || y + height < clipping.y) {
+				// Fast exit: the line spacing area where the annotation is drawn doesn't intersect
+				// the clipping and isn't just above it.
+				return;
+			}
+			// Compute the location of the annotation
+			int x= textWidget.getLocationAtOffset(offset).x;
 			if (clipping.contains(x, y)) {
 				// GC clipping contains the x, y where annotation must be drawn.
 				
@@ -0,0 +1,158 @@
+/**
+ *  Copyright (c) 2017 Angelo ZERR.
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  Contributors:
+ *  Angelo Zerr <angelo.zerr@gmail.com> - [CodeMining] Provide inline annotations support - Bug 527675
+ */
+package org.eclipse.jface.text.source.inlined;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.IDocumentExtension4;
+import org.eclipse.jface.text.Position;
+
+/**
+ * Index of inlined annotations sorted by offset, to find the annotations located at an offset or
+ * in a range in O(log n).
+ * <p>
+ * The positions of the annotations are updated by the document changes without changing their
+ * order, except for the deleted positions. The index is sorted again when the document has been
+ * modified since the last sort, which is O(n) since the annotations are almost sorted.
+ * </p>
+ *
+ * @since 3.13.0
+ */
+class InlinedAnnotationIndex {
+
+	/**
+	 * Comparator of inlined annotations by offset.
+	 */
+	private static final Comparator<AbstractInlinedAnnotation> BY_OFFSET= (a1, a2) -> Integer
+			.compare(a1.getPosition().getOffset(), a2.getPosition().getOffset());
+
+	/**
+	 * The inlined annotations sorted by offset.
+	 */
+	private final AbstractInlinedAnnotation[] fAnnotations;
+
+	/**
+	 * The document modification stamp of the last sort.
+	 */
+	private long fStamp= IDocumentExtension4.UNKNOWN_MODIFICATION_STAMP;
+
+	/**
+	 * true if the annotations are sorted since the last document modification and false otherwise.
+	 */
+	private boolean fSorted;
+
+	/**
+	 * Creates an index of the given inlined annotations.
+	 *
+	 * @param annotations the inlined annotations
+	 */
+	InlinedAnnotationIndex(Collection<AbstractInlinedAnnotation> annotations) {
+		fAnnotations= annotations.toArray(new AbstractInlinedAnnotation[annotations.size()]);
+	}
+
+	/**
+	 * Returns the first inlined annotation located at the given offset, or <code>null</code> if
+	 * not found.
+	 *
+	 * @param document the document of the annotations
+	 * @param offset the offset
+	 * @return the first inlined annotation located at the given offset, or <code>null</code> if
+	 *         not found.
+	 */
+	synchronized AbstractInlinedAnnotation find(IDocument document, int offset) {
+		validate(document);
+		for (int i= lowerBound(offset); i < fAnnotations.length; i++) {
+			AbstractInlinedAnnotation annotation= fAnnotations[i];
+			Position position= annotation.getPosition();
+			if (position.getOffset() != offset) {
+				return null;
+			}
+			if (!position.isDeleted() && !annotation.isMarkedDeleted()) {
+				return annotation;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the inlined annotations whose offset is located in the given range (end inclusive),
+	 * sorted by offset.
+	 *
+	 * @param document the document of the annotations
+	 * @param offset the start offset of the range
+	 * @param length the length of the range
+	 * @return the inlined annotations whose offset is located in the given range.
+	 */
+	synchronized List<AbstractInlinedAnnotation> find(IDocument document, int offset, int length) {
+		validate(document);
+		int end= offset + length;
+		List<AbstractInlinedAnnotation> result= null;
+		for (int i= lowerBound(offset); i < fAnnotations.length; i++) {
+			AbstractInlinedAnnotation annotation= fAnnotations[i];
+			Position position= annotation.getPosition();
+			if (position.getOffset() > end) {
+				break;
+			}
+			if (!position.isDeleted() && !annotation.isMarkedDeleted()) {
+				if (result == null) {
+					result= new ArrayList<>();
+				}
+				result.add(annotation);
+			}
+		}
+		return result != null ? result : Collections.emptyList();
+	}
+
+	/**
+	 * Sort the annotations if the document has been modified since the last sort.
+	 *
+	 * @param document the document of the annotations
+	 */
+	private void validate(IDocument document) {
+		long stamp= document instanceof IDocumentExtension4
+				? ((IDocumentExtension4) document).getModificationStamp()
+				: IDocumentExtension4.UNKNOWN_MODIFICATION_STAMP;
+		if (fSorted && stamp != IDocumentExtension4.UNKNOWN_MODIFICATION_STAMP && stamp == fStamp) {
+			return;
+		}
+		Arrays.sort(fAnnotations, BY_OFFSET);
+		fStamp= stamp;
+		fSorted= true;
+	}
+
+	/**
+	 * Returns the index of the first annotation whose offset is greater than or equal to the
+	 * given offset.
+	 *
+	 * @param offset the offset
+	 * @return the index of the first annotation whose offset is greater than or equal to the given
+	 *         offset.
+	 */
+	private int lowerBound(int offset) {
+		int low= 0;
+		int high= fAnnotations.length;
+		while (low < high) {
+			int middle= (low + high) >>> 1;
+			if (fAnnotations[middle].getPosition().getOffset() < offset) {
+				low= middle + 1;
+			} else {
+				high= middle;
+			}
+		}
+		return low;
+	}
+}
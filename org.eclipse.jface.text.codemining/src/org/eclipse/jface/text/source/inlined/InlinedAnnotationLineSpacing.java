@@ -0,0 +1,189 @@
+/**
+ *  Copyright (c) 2017 Angelo ZERR.
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  Contributors:
+ *  Angelo Zerr <angelo.zerr@gmail.com> - [CodeMining] Provide inline annotations support - Bug 527675
+ */
+package org.eclipse.jface.text.source.inlined;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.Position;
+
+/**
+ * Table of the {@link LineHeaderAnnotation} by line index, used to answer
+ * {@link InlinedAnnotationSupport#getLineSpacing(int)} without walking the annotation model.
+ * <p>
+ * The lines which have a line spacing are stored in a {@link BitSet}, so that the lines without
+ * line header annotation (the most of the lines) are answered in O(1). The annotations are stored
+ * in a sparse table sorted by line index. A lookup doesn't allocate any object.
+ * </p>
+ * <p>
+ * When a document change adds or removes lines, the table is updated with
+ * {@link #update(IDocument, int, int, int, List)}: the line indexes after the changed lines are
+ * shifted and only the changed lines are computed again.
+ * </p>
+ *
+ * @since 3.13.0
+ */
+class InlinedAnnotationLineSpacing {
+
+	/**
+	 * The line indexes which have a line spacing.
+	 */
+	private final BitSet fLines;
+
+	/**
+	 * The sorted line indexes which have a line spacing.
+	 */
+	private final int[] fLineIndexes;
+
+	/**
+	 * The line header annotations of the line indexes of {@link #fLineIndexes}.
+	 */
+	private final LineHeaderAnnotation[] fAnnotations;
+
+	/**
+	 * The number of line indexes of the table.
+	 */
+	private final int fSize;
+
+	/**
+	 * Creates the line spacing table of the given inlined annotations.
+	 *
+	 * @param document the document of the annotations
+	 * @param annotations the inlined annotations sorted by offset
+	 */
+	InlinedAnnotationLineSpacing(IDocument document, List<AbstractInlinedAnnotation> annotations) {
+		fLines= new BitSet();
+		fLineIndexes= new int[annotations.size()];
+		fAnnotations= new LineHeaderAnnotation[annotations.size()];
+		fSize= addAll(document, annotations, 0);
+	}
+
+	/**
+	 * Creates the line spacing table of the given table updated with a document change which has
+	 * replaced the given lines.
+	 *
+	 * @param table the table before the document change
+	 * @param document the document after the change
+	 * @param firstLine the first line replaced by the change
+	 * @param lastLine the last line replaced by the change, before the change
+	 * @param delta the number of lines added (or removed when negative) by the change
+	 * @param annotations the inlined annotations located in the replaced lines after the change,
+	 *            sorted by offset
+	 */
+	private InlinedAnnotationLineSpacing(InlinedAnnotationLineSpacing table, IDocument document, int firstLine,
+			int lastLine, int delta, List<AbstractInlinedAnnotation> annotations) {
+		fLines= new BitSet();
+		fLineIndexes= new int[table.fSize + annotations.size()];
+		fAnnotations= new LineHeaderAnnotation[fLineIndexes.length];
+		int size= 0;
+		int i= 0;
+		// the line header annotation of a line is stored with the index of the previous line.
+		for (; i < table.fSize && table.fLineIndexes[i] + 1 < firstLine; i++) {
+			size= add(table.fLineIndexes[i], table.fAnnotations[i], size);
+		}
+		// the replaced lines are computed again.
+		size= addAll(document, annotations, size);
+		for (; i < table.fSize; i++) {
+			if (table.fLineIndexes[i] + 1 > lastLine) {
+				size= add(table.fLineIndexes[i] + delta, table.fAnnotations[i], size);
+			}
+		}
+		fSize= size;
+	}
+
+	/**
+	 * Returns the line spacing table updated with a document change which has replaced the given
+	 * lines: the line indexes after the replaced lines are shifted by the given delta and only the
+	 * annotations located in the replaced lines are computed again.
+	 *
+	 * @param document the document after the change
+	 * @param firstLine the first line replaced by the change
+	 * @param lastLine the last line replaced by the change, before the change
+	 * @param delta the number of lines added (or removed when negative) by the change
+	 * @param annotations the inlined annotations located in the replaced lines after the change,
+	 *            sorted by offset
+	 * @return the line spacing table updated with the document change.
+	 */
+	InlinedAnnotationLineSpacing update(IDocument document, int firstLine, int lastLine, int delta,
+			List<AbstractInlinedAnnotation> annotations) {
+		return new InlinedAnnotationLineSpacing(this, document, firstLine, lastLine, delta, annotations);
+	}
+
+	/**
+	 * Add the line header annotations of the given inlined annotations to this table.
+	 *
+	 * @param document the document of the annotations
+	 * @param annotations the inlined annotations sorted by offset, located after the line indexes
+	 *            of this table
+	 * @param size the number of line indexes of this table
+	 * @return the number of line indexes of this table.
+	 */
+	private int addAll(IDocument document, List<AbstractInlinedAnnotation> annotations, int size) {
+		for (AbstractInlinedAnnotation annotation : annotations) {
+			if (!(annotation instanceof LineHeaderAnnotation)) {
+				continue;
+			}
+			int lineIndex;
+			try {
+				// the line header annotation is drawn in the line spacing of the previous line.
+				lineIndex= document.getLineOfOffset(annotation.getPosition().getOffset()) - 1;
+			} catch (BadLocationException e) {
+				continue;
+			}
+			size= add(lineIndex, (LineHeaderAnnotation) annotation, size);
+		}
+		return size;
+	}
+
+	/**
+	 * Add the given line header annotation to this table.
+	 *
+	 * @param lineIndex the line index where the annotation is drawn, greater than or equal to the
+	 *            line indexes of this table
+	 * @param annotation the line header annotation
+	 * @param size the number of line indexes of this table
+	 * @return the number of line indexes of this table.
+	 */
+	private int add(int lineIndex, LineHeaderAnnotation annotation, int size) {
+		if (lineIndex < 0 || fLines.get(lineIndex)) {
+			// the annotations are sorted by offset, the first annotation of the line wins.
+			return size;
+		}
+		fLines.set(lineIndex);
+		fLineIndexes[size]= lineIndex;
+		fAnnotations[size]= annotation;
+		return size + 1;
+	}
+
+	/**
+	 * Returns the line header annotation drawn in the line spacing of the given line index, or
+	 * <code>null</code> if none.
+	 *
+	 * @param lineIndex the line index
+	 * @return the line header annotation drawn in the line spacing of the given line index, or
+	 *         <code>null</code> if none.
+	 */
+	LineHeaderAnnotation get(int lineIndex) {
+		if (lineIndex < 0 || !fLines.get(lineIndex)) {
+			return null;
+		}
+		int index= Arrays.binarySearch(fLineIndexes, 0, fSize, lineIndex);
+		if (index < 0) {
+			return null;
+		}
+		LineHeaderAnnotation annotation= fAnnotations[index];
+		Position position= annotation.getPosition();
+		return !position.isDeleted() && !annotation.isMarkedDeleted() ? annotation : null;
+	}
+}
@@ -0,0 +1,124 @@
+/**
+ *  Copyright (c) 2017 Angelo ZERR.
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  Contributors:
+ *  Angelo Zerr <angelo.zerr@gmail.com> - [CodeMining] Provide inline annotations support - Bug 527675
+ */
+package org.eclipse.jface.text.source.inlined;
+
+import org.eclipse.swt.custom.StyledText;
+import org.eclipse.swt.events.PaintEvent;
+import org.eclipse.swt.events.PaintListener;
+import org.eclipse.swt.graphics.Color;
+
+import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.IRegion;
+import org.eclipse.jface.text.JFaceTextUtil;
+import org.eclipse.jface.text.Position;
+import org.eclipse.jface.text.source.AnnotationPainter;
+import org.eclipse.jface.text.source.ISourceViewer;
+
+/**
+ * Paint layer which draws the visible inlined annotations of a text widget in one pass, with a
+ * single {@link PaintListener}. The visible annotations are found with the offset index of the
+ * {@link InlinedAnnotationSupport}, without the iteration of the annotation model and the
+ * decorations bookkeeping of the {@link AnnotationPainter}.
+ * <p>
+ * The line spacing area of a line header annotation is cleared by the drawing of the annotation,
+ * so no line background listener is required.
+ * </p>
+ *
+ * @since 3.13.0
+ */
+class InlinedAnnotationPaintLayer implements PaintListener {
+
+	/**
+	 * The source viewer.
+	 */
+	private final ISourceViewer fViewer;
+
+	/**
+	 * The inlined annotation support which provides the annotations to draw.
+	 */
+	private final InlinedAnnotationSupport fSupport;
+
+	/**
+	 * Creates the paint layer of the given inlined annotation support.
+	 *
+	 * @param viewer the source viewer
+	 * @param support the inlined annotation support which provides the annotations to draw
+	 */
+	InlinedAnnotationPaintLayer(ISourceViewer viewer, InlinedAnnotationSupport support) {
+		fViewer= viewer;
+		fSupport= support;
+	}
+
+	/**
+	 * Install the paint layer on the text widget of the viewer.
+	 */
+	void install() {
+		StyledText text= fViewer.getTextWidget();
+		if (text != null && !text.isDisposed()) {
+			text.addPaintListener(this);
+		}
+	}
+
+	/**
+	 * Uninstall the paint layer from the text widget of the viewer.
+	 */
+	void uninstall() {
+		StyledText text= fViewer.getTextWidget();
+		if (text != null && !text.isDisposed()) {
+			text.removePaintListener(this);
+		}
+	}
+
+	@Override
+	public void paintControl(PaintEvent e) {
+		IDocument document= fViewer.getDocument();
+		StyledText text= fViewer.getTextWidget();
+		if (document == null || text == null) {
+			return;
+		}
+		// the annotations are indexed by model offsets.
+		IRegion visibleRegion= InlinedAnnotationSupport.getVisibleModelRegion(fViewer);
+		if (visibleRegion == null) {
+			return;
+		}
+		int start= visibleRegion.getOffset();
+		int end= start + visibleRegion.getLength();
+		try {
+			// the line header annotation of the line after the bottom line is drawn in the line
+			// spacing of the bottom line.
+			int endLine= document.getLineOfOffset(end);
+			if (endLine + 1 < document.getNumberOfLines()) {
+				end= document.getLineOffset(endLine + 1);
+			}
+		} catch (BadLocationException ex) {
+			return;
+		}
+		Color foreground= e.gc.getForeground();
+		Color background= e.gc.getBackground();
+		Color color= fSupport.getColor();
+		try {
+			for (AbstractInlinedAnnotation annotation : fSupport.findExistingAnnotations(start, end - start)) {
+				Position position= annotation.getPosition();
+				int widgetOffset= JFaceTextUtil.modelOffset2WidgetOffset(fViewer, position.getOffset());
+				if (widgetOffset == -1) {
+					// the annotation is located in a folded region
+					continue;
+				}
+				InlinedAnnotationDrawingStrategy.draw(annotation, e.gc, text, widgetOffset, position.getLength(),
+						color);
+			}
+		} finally {
+			e.gc.setForeground(foreground);
+			e.gc.setBackground(background);
+		}
+	}
+}
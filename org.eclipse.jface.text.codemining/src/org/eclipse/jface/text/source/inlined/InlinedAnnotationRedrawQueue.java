@@ -0,0 +1,146 @@
+/**
+ *  Copyright (c) 2017 Angelo ZERR.
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  Contributors:
+ *  Angelo Zerr <angelo.zerr@gmail.com> - [CodeMining] Provide inline annotations support - Bug 527675
+ */
+package org.eclipse.jface.text.source.inlined;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+import org.eclipse.swt.custom.StyledText;
+import org.eclipse.swt.graphics.Rectangle;
+
+/**
+ * Queue which coalesces the redraw of the inlined annotations of a {@link StyledText}: the dirty
+ * annotations are collected and redrawn at most once per frame with a single damage rectangle,
+ * instead of one UI runnable and one redraw by annotation. The deleted annotations are redrawn
+ * with the same damage rectangle, instead of one redraw of the whole text widget by deleted
+ * annotation.
+ *
+ * @since 3.13.0
+ */
+class InlinedAnnotationRedrawQueue {
+
+	/**
+	 * The minimal delay (in milliseconds) between two flushes of the queue.
+	 */
+	private static final int FRAME_DELAY= 16;
+
+	/**
+	 * The redraw queues by text widget.
+	 */
+	private static final Map<StyledText, InlinedAnnotationRedrawQueue> fgQueues= new WeakHashMap<>();
+
+	/**
+	 * The annotations to redraw.
+	 */
+	private final Set<AbstractInlinedAnnotation> fDirtyAnnotations= new LinkedHashSet<>();
+
+	/**
+	 * true if a flush of the queue is scheduled and false otherwise.
+	 */
+	private boolean fFlushScheduled;
+
+	/**
+	 * true if the queue is removed when the text widget is disposed and false otherwise.
+	 */
+	private boolean fDisposeListenerInstalled;
+
+	/**
+	 * The time (in milliseconds) of the last flush.
+	 */
+	private long fLastFlush;
+
+	/**
+	 * Returns the redraw queue of the given text widget.
+	 *
+	 * @param textWidget the text widget
+	 * @return the redraw queue of the given text widget.
+	 */
+	static InlinedAnnotationRedrawQueue getQueue(StyledText textWidget) {
+		synchronized (fgQueues) {
+			return fgQueues.computeIfAbsent(textWidget, t -> new InlinedAnnotationRedrawQueue());
+		}
+	}
+
+	/**
+	 * Schedule the redraw of the given annotation with the next flush of the queue.
+	 *
+	 * @param annotation the inlined annotation to redraw.
+	 */
+	void schedule(AbstractInlinedAnnotation annotation) {
+		synchronized (this) {
+			fDirtyAnnotations.add(annotation);
+			if (fFlushScheduled) {
+				return;
+			}
+			fFlushScheduled= true;
+		}
+		InlinedAnnotationSupport.runInUIThread(annotation.getTextWidget(), text -> {
+			if (!fDisposeListenerInstalled) {
+				fDisposeListenerInstalled= true;
+				text.addDisposeListener(e -> {
+					synchronized (fgQueues) {
+						fgQueues.remove(text);
+					}
+				});
+			}
+			long elapsed= System.currentTimeMillis() - fLastFlush;
+			if (elapsed >= FRAME_DELAY) {
+				flush(text);
+			} else {
+				// wait for the next frame to collect the other dirty annotations.
+				text.getDisplay().timerExec((int) (FRAME_DELAY - elapsed), () -> {
+					if (!text.isDisposed()) {
+						flush(text);
+					}
+				});
+			}
+		});
+	}
+
+	/**
+	 * Redraw the dirty annotations with a single damage rectangle.
+	 *
+	 * @param text the text widget
+	 */
+	private void flush(StyledText text) {
+		List<AbstractInlinedAnnotation> annotations;
+		synchronized (this) {
+			fFlushScheduled= false;
+			annotations= new ArrayList<>(fDirtyAnnotations);
+			fDirtyAnnotations.clear();
+		}
+		fLastFlush= System.currentTimeMillis();
+		Rectangle damage= null;
+		boolean deleted= false;
+		for (AbstractInlinedAnnotation annotation : annotations) {
+			deleted|= annotation.isMarkedDeleted();
+			Rectangle bounds= InlinedAnnotationDrawingStrategy.getRedrawBounds(annotation, text);
+			if (bounds != null) {
+				damage= damage != null ? damage.union(bounds) : bounds;
+			}
+		}
+		if (damage != null) {
+			// the annotations outside the client area are drawn when they are scrolled in.
+			damage= damage.intersection(text.getClientArea());
+			if (!damage.isEmpty()) {
+				text.redraw(damage.x, damage.y, damage.width, damage.height, true);
+			}
+		}
+		if (deleted) {
+			// update caret offset since line spacing has changed.
+			text.setCaretOffset(text.getCaretOffset());
+		}
+	}
+}
@@ -13,11 +13,14 @@ package org.eclipse.jface.text.source.inlined;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
 import java.util.function.Consumer;
 
 import org.eclipse.swt.SWT;
@@ -25,15 +28,23 @@ import org.eclipse.swt.custom.StyleRange;
 import org.eclipse.swt.custom.StyledText;
 import org.eclipse.swt.custom.StyledTextLineSpacingProvider;
 import org.eclipse.swt.graphics.Color;
+import org.eclipse.swt.graphics.GlyphMetrics;
 import org.eclipse.swt.widgets.Display;
 
 import org.eclipse.core.runtime.Assert;
 
 import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.DocumentEvent;
 import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.IDocumentExtension4;
+import org.eclipse.jface.text.IDocumentListener;
 import org.eclipse.jface.text.IRegion;
 import org.eclipse.jface.text.ISynchronizable;
+import org.eclipse.jface.text.ITextInputListener;
+import org.eclipse.jface.text.ITextViewer;
+import org.eclipse.jface.text.ITextViewerExtension5;
 import org.eclipse.jface.text.Position;
+import org.eclipse.jface.text.Region;
 import org.eclipse.jface.text.source.Annotation;
 import org.eclipse.jface.text.source.AnnotationPainter;
 import org.eclipse.jface.text.source.AnnotationPainter.IDrawingStrategy;
@@ -49,11 +60,176 @@ import org.eclipse.jface.text.source.ISourceViewer;
  * <li>line header annotation with {@link LineHeaderAnnotation}.</li>
  * <li>line content annotation with {@link LineContentAnnotation}.</li>
  * </ul>
+ * <p>
+ * The inlined annotations are drawn either by an {@link AnnotationPainter} (see
+ * {@link #install(ISourceViewer, AnnotationPainter)}), or by a paint listener which draws the
+ * visible annotations in one pass (see {@link #install(ISourceViewer)}).
+ * </p>
  *
  * @since 3.13.0
  */
 public class InlinedAnnotationSupport implements StyledTextLineSpacingProvider {
 
+	/**
+	 * Document change which adds or removes lines, used to update the line spacing table instead
+	 * of rebuilding it.
+	 */
+	private static class LineChange {
+
+		/**
+		 * The line spacing table before the change.
+		 */
+		private final InlinedAnnotationLineSpacing fTable;
+
+		/**
+		 * The index of the inlined annotations of the table.
+		 */
+		private final InlinedAnnotationIndex fTableIndex;
+
+		/**
+		 * The first line replaced by the change.
+		 */
+		private final int fFirstLine;
+
+		/**
+		 * The last line replaced by the change, before the change.
+		 */
+		private final int fLastLine;
+
+		/**
+		 * The number of lines added (or removed when negative) by the change.
+		 */
+		private final int fDelta;
+
+		/**
+		 * The modification stamp of the document before the change.
+		 */
+		private final long fStamp;
+
+		/**
+		 * The line spacing table updated with the change, or <code>null</code> if it is not
+		 * computed yet.
+		 */
+		private volatile InlinedAnnotationLineSpacing fUpdatedTable;
+
+		LineChange(InlinedAnnotationLineSpacing table, InlinedAnnotationIndex tableIndex, int firstLine,
+				int lastLine, int delta, long stamp) {
+			fTable= table;
+			fTableIndex= tableIndex;
+			fFirstLine= firstLine;
+			fLastLine= lastLine;
+			fDelta= delta;
+			fStamp= stamp;
+		}
+
+		/**
+		 * Returns true if the change has been applied to the given document and the annotations
+		 * have not been updated since the change, and false otherwise.
+		 *
+		 * @param document the document
+		 * @param index the index of the current inlined annotations
+		 * @return true if the change has been applied to the given document and false otherwise.
+		 */
+		boolean isApplied(IDocument document, InlinedAnnotationIndex index) {
+			long stamp= getModificationStamp(document);
+			return index == fTableIndex && fStamp != IDocumentExtension4.UNKNOWN_MODIFICATION_STAMP
+					&& stamp != fStamp;
+		}
+
+		/**
+		 * Returns the line spacing table updated with the change: only the annotations of the
+		 * replaced lines are looked up, the line indexes after them are shifted.
+		 *
+		 * @param document the document after the change
+		 * @return the line spacing table updated with the change, or <code>null</code> if it cannot
+		 *         be computed.
+		 */
+		InlinedAnnotationLineSpacing apply(IDocument document) {
+			InlinedAnnotationLineSpacing updatedTable= fUpdatedTable;
+			if (updatedTable == null) {
+				try {
+					int start= document.getLineOffset(fFirstLine);
+					IRegion lastLine= document.getLineInformation(fLastLine + fDelta);
+					int end= lastLine.getOffset() + lastLine.getLength();
+					updatedTable= fTable.update(document, fFirstLine, fLastLine, fDelta,
+							fTableIndex.find(document, start, end - start));
+				} catch (BadLocationException e) {
+					return null;
+				}
+				fUpdatedTable= updatedTable;
+			}
+			return updatedTable;
+		}
+	}
+
+	/**
+	 * Listener which updates the line spacing table when a document change modifies the lines of
+	 * the document.
+	 */
+	private class LineSpacingInvalidator implements IDocumentListener, ITextInputListener {
+
+		@Override
+		public void documentAboutToBeChanged(DocumentEvent event) {
+			IDocument document= event.getDocument();
+			LineChange change= null;
+			try {
+				int firstLine= document.getLineOfOffset(event.getOffset());
+				int lastLine= document.getLineOfOffset(event.getOffset() + event.getLength());
+				String text= event.getText();
+				int addedLines= text != null ? document.computeNumberOfLines(text) : 0;
+				if (firstLine == lastLine && addedLines == 0) {
+					// the change is done inside a line, the line of the annotations is not modified.
+					return;
+				}
+				InlinedAnnotationLineSpacing lineSpacing= fLineSpacing;
+				if (lineSpacing != null) {
+					change= new LineChange(lineSpacing, fIndex, firstLine, lastLine,
+							addedLines - (lastLine - firstLine), getModificationStamp(document));
+				}
+			} catch (BadLocationException e) {
+				// the table is rebuilt
+			}
+			// the line of the annotations located after the change could be modified. The table
+			// is cleared before the change, since the StyledText is a pre-notified document
+			// listener which reads the line spacing before the document listeners are notified.
+			fLineChange= change;
+			fLinesChanging= true;
+			fLineSpacing= null;
+		}
+
+		@Override
+		public void documentChanged(DocumentEvent event) {
+			if (fLinesChanging) {
+				LineChange change= fLineChange;
+				fLineChange= null;
+				fLinesChanging= false;
+				InlinedAnnotationIndex index= fIndex;
+				// the change has been applied to the document.
+				fLineSpacing= change != null && change.fTableIndex == index ? change.apply(event.getDocument()) : null;
+				if (fIndex != index) {
+					// the annotations have been updated while the table was updated.
+					fLineSpacing= null;
+				}
+			}
+		}
+
+		@Override
+		public void inputDocumentAboutToBeChanged(IDocument oldInput, IDocument newInput) {
+			if (oldInput != null) {
+				oldInput.removeDocumentListener(this);
+			}
+			fLineChange= null;
+			fLineSpacing= null;
+		}
+
+		@Override
+		public void inputDocumentChanged(IDocument oldInput, IDocument newInput) {
+			if (newInput != null) {
+				newInput.addDocumentListener(this);
+			}
+		}
+	}
+
 	/**
 	 * The annotation inlined strategy singleton.
 	 */
@@ -70,15 +246,55 @@ public class InlinedAnnotationSupport implements StyledTextLineSpacingProvider {
 	private ISourceViewer fViewer;
 
 	/**
-	 * The annotation painter to use to draw the inlined annotations.
+	 * The annotation painter to use to draw the inlined annotations, or <code>null</code> if the
+	 * paint layer is used.
 	 */
 	private AnnotationPainter fPainter;
 
+	/**
+	 * The paint layer to use to draw the inlined annotations, or <code>null</code> if the
+	 * annotation painter is used.
+	 */
+	private InlinedAnnotationPaintLayer fPaintLayer;
+
+	/**
+	 * The color to use to draw the inlined annotations.
+	 */
+	private Color fColor;
+
 	/**
 	 * Holds the current inlined annotations.
 	 */
 	private Set<AbstractInlinedAnnotation> fInlinedAnnotations;
 
+	/**
+	 * The index of the current inlined annotations sorted by offset.
+	 */
+	private volatile InlinedAnnotationIndex fIndex;
+
+	/**
+	 * The table of the line header annotations by line index, or <code>null</code> if it must be
+	 * rebuilt.
+	 */
+	private volatile InlinedAnnotationLineSpacing fLineSpacing;
+
+	/**
+	 * true while a document change which modifies the lines of the document is done: the line
+	 * spacing table is not kept since it could be built with the lines before the change.
+	 */
+	private volatile boolean fLinesChanging;
+
+	/**
+	 * The document change which modifies the lines of the document while it is done, or
+	 * <code>null</code> if the line spacing table must be rebuilt after the change.
+	 */
+	private volatile LineChange fLineChange;
+
+	/**
+	 * The listener which invalidates the line spacing table.
+	 */
+	private LineSpacingInvalidator fLineSpacingInvalidator;
+
 	/**
 	 * Install the inlined annotation support for the given viewer.
 	 *
@@ -91,6 +307,34 @@ public class InlinedAnnotationSupport implements StyledTextLineSpacingProvider {
 		fViewer= viewer;
 		fPainter= painter;
 		initPainter();
+		doInstall();
+	}
+
+	/**
+	 * Install the inlined annotation support for the given viewer. The visible inlined annotations
+	 * are drawn in one pass by a paint listener of the text widget, without an
+	 * {@link AnnotationPainter}.
+	 *
+	 * @param viewer the source viewer
+	 */
+	public void install(ISourceViewer viewer) {
+		Assert.isNotNull(viewer);
+		fViewer= viewer;
+		fPaintLayer= new InlinedAnnotationPaintLayer(viewer, this);
+		fPaintLayer.install();
+		doInstall();
+	}
+
+	/**
+	 * Install the listeners and the line spacing provider of the inlined annotation support.
+	 */
+	private void doInstall() {
+		fLineSpacingInvalidator= new LineSpacingInvalidator();
+		fViewer.addTextInputListener(fLineSpacingInvalidator);
+		IDocument document= fViewer.getDocument();
+		if (document != null) {
+			document.addDocumentListener(fLineSpacingInvalidator);
+		}
 		StyledText text= fViewer.getTextWidget();
 		if (text == null || text.isDisposed()) {
 			return;
@@ -113,13 +357,39 @@ public class InlinedAnnotationSupport implements StyledTextLineSpacingProvider {
 	 * @param color the color to use to draw the inlined annotations.
 	 */
 	public void setColor(Color color) {
-		fPainter.setAnnotationTypeColor(AbstractInlinedAnnotation.TYPE, color);
+		fColor= color;
+		if (fPainter != null) {
+			fPainter.setAnnotationTypeColor(AbstractInlinedAnnotation.TYPE, color);
+		}
+	}
+
+	/**
+	 * Returns the color to use to draw the inlined annotations.
+	 *
+	 * @return the color to use to draw the inlined annotations.
+	 */
+	Color getColor() {
+		return fColor;
 	}
 
 	/**
 	 * Unisntall the inlined annotation support
 	 */
 	public void uninstall() {
+		if (fViewer != null && fLineSpacingInvalidator != null) {
+			fViewer.removeTextInputListener(fLineSpacingInvalidator);
+			IDocument document= fViewer.getDocument();
+			if (document != null) {
+				document.removeDocumentListener(fLineSpacingInvalidator);
+			}
+			fLineSpacingInvalidator= null;
+		}
+		if (fPaintLayer != null) {
+			fPaintLayer.uninstall();
+			fPaintLayer= null;
+		}
+		fLineChange= null;
+		fLineSpacing= null;
 		fViewer= null;
 		fPainter= null;
 	}
@@ -130,6 +400,20 @@ public class InlinedAnnotationSupport implements StyledTextLineSpacingProvider {
 	 * @param annotations the inlined annotation.
 	 */
 	public void updateAnnotations(Set<AbstractInlinedAnnotation> annotations) {
+		updateAnnotations(annotations, null);
+	}
+
+	/**
+	 * Update the given inlined annotations which are located in the given region. The existing
+	 * inlined annotations which are located outside the region are kept as they are, and the
+	 * existing inlined annotations located inside the region which are not in the given set are
+	 * removed.
+	 *
+	 * @param annotations the inlined annotations located in the given region.
+	 * @param region the region where annotations must be updated, or <code>null</code> to update
+	 *            the annotations of the whole document.
+	 */
+	public void updateAnnotations(Set<AbstractInlinedAnnotation> annotations, IRegion region) {
 		IDocument document= fViewer != null ? fViewer.getDocument() : null;
 		if (document == null) {
 			// this case comes from when editor is closed before rendered is done.
@@ -140,26 +424,45 @@ public class InlinedAnnotationSupport implements StyledTextLineSpacingProvider {
 			return;
 		}
 		StyledText styledText= fViewer.getTextWidget();
+		// Compute the minimal changes with hash lookups: the annotations are compared by
+		// identity, an annotation whose content has changed is kept as it is and only redrawn.
+		Set<AbstractInlinedAnnotation> oldAnnotations= fInlinedAnnotations != null ? fInlinedAnnotations
+				: Collections.emptySet();
 		Map<AbstractInlinedAnnotation, Position> annotationsToAdd= new HashMap<>();
-		List<AbstractInlinedAnnotation> annotationsToRemove= fInlinedAnnotations != null
-				? new ArrayList<>(fInlinedAnnotations)
-				: Collections.emptyList();
+		List<AbstractInlinedAnnotation> annotationsToRemove= new ArrayList<>();
+		Set<AbstractInlinedAnnotation> newAnnotations= annotations;
+		if (region != null && !oldAnnotations.isEmpty()) {
+			newAnnotations= new HashSet<>(annotations);
+		}
+		for (AbstractInlinedAnnotation ann : oldAnnotations) {
+			if (annotations.contains(ann)) {
+				// The annotation is updated
+				continue;
+			}
+			if (region != null && !isRemovable(ann, region)) {
+				// Keep the annotations which are outside the region
+				newAnnotations.add(ann);
+			} else {
+				annotationsToRemove.add(ann);
+			}
+		}
+		List<LineContentAnnotation> metricsToAdd= new ArrayList<>();
+		List<LineContentAnnotation> metricsToRemove= new ArrayList<>();
 		// Loop for annotations to update
 		for (AbstractInlinedAnnotation ann : annotations) {
-			if (!annotationsToRemove.remove(ann)) {
+			if (!oldAnnotations.contains(ann)) {
 				// The annotation was not created, add it
 				annotationsToAdd.put(ann, ann.getPosition());
+			} else if (annotationModel.getPosition(ann) == null) {
+				// The annotation has been removed from the model (ex: its position was deleted)
+				annotationsToAdd.put(ann, ann.getPosition());
 			}
+			// else the position of the annotation is the position of the annotation model, which
+			// is updated by the document.
 			if (ann instanceof LineContentAnnotation) {
 				// Create metrics with well width to add space where the inline annotation must
 				// be drawn.
-				runInUIThread(styledText, (text) -> {
-					StyleRange s= new StyleRange();
-					s.start= ann.getPosition().getOffset();
-					s.length= 1;
-					s.metrics= ((LineContentAnnotation) ann).createMetrics();
-					text.setStyleRange(s);
-				});
+				metricsToAdd.add((LineContentAnnotation) ann);
 			}
 		}
 		// Process annotations to remove
@@ -168,15 +471,13 @@ public class InlinedAnnotationSupport implements StyledTextLineSpacingProvider {
 			ann.markDeleted(true);
 			if (ann instanceof LineContentAnnotation) {
 				// Set metrics to null to remove space of the inline annotation
-				runInUIThread(styledText, (text) -> {
-					StyleRange s= new StyleRange();
-					s.start= ann.getPosition().getOffset();
-					s.length= 1;
-					s.metrics= null;
-					text.setStyleRange(s);
-				});
+				metricsToRemove.add((LineContentAnnotation) ann);
 			}
 		}
+		if (!metricsToAdd.isEmpty() || !metricsToRemove.isEmpty()) {
+			// Apply all metrics with one UI runnable and one layout of the styled text.
+			runInUIThread(styledText, (text) -> updateMetrics(text, metricsToAdd, metricsToRemove));
+		}
 		// Update annotation model
 		synchronized (getLockObject(annotationModel)) {
 			if (annotationsToAdd.size() == 0 && annotationsToRemove.size() == 0) {
@@ -190,7 +491,10 @@ public class InlinedAnnotationSupport implements StyledTextLineSpacingProvider {
 					((IAnnotationModelExtension) annotationModel).replaceAnnotations(
 							annotationsToRemove.toArray(new Annotation[annotationsToRemove.size()]), annotationsToAdd);
 				} else {
-					removeInlinedAnnotations();
+					// Remove only the removed annotations to keep the others.
+					for (AbstractInlinedAnnotation ann : annotationsToRemove) {
+						annotationModel.removeAnnotation(ann);
+					}
 					Iterator<Entry<AbstractInlinedAnnotation, Position>> iter= annotationsToAdd.entrySet().iterator();
 					while (iter.hasNext()) {
 						Entry<AbstractInlinedAnnotation, Position> mapEntry= iter.next();
@@ -198,8 +502,179 @@ public class InlinedAnnotationSupport implements StyledTextLineSpacingProvider {
 					}
 				}
 			}
-			fInlinedAnnotations= annotations;
+			fInlinedAnnotations= newAnnotations;
+			fIndex= new InlinedAnnotationIndex(newAnnotations);
+			fLineSpacing= null;
+		}
+		if (fPaintLayer != null) {
+			// Without annotation painter, the changed annotations must be redrawn: the deleted
+			// annotations are hidden and the others are drawn by the paint layer.
+			annotationsToRemove.forEach(AbstractInlinedAnnotation::redraw);
+			annotationsToAdd.keySet().forEach(AbstractInlinedAnnotation::redraw);
+		}
+	}
+
+	/**
+	 * Update the {@link GlyphMetrics} of the style ranges where the given line content annotations
+	 * are located. Only the metrics which are added, removed or changed are applied, and the style
+	 * ranges are replaced per run of contiguous offsets, so that the other style ranges of the
+	 * styled text are not modified. The other styles of the replaced style ranges are kept.
+	 *
+	 * @param text the styled text
+	 * @param metricsToAdd the line content annotations whose metrics must be set
+	 * @param metricsToRemove the line content annotations whose metrics must be removed
+	 */
+	@SuppressWarnings("boxing")
+	static void updateMetrics(StyledText text, List<LineContentAnnotation> metricsToAdd,
+			List<LineContentAnnotation> metricsToRemove) {
+		// Sort the metrics by offset, the added metrics win over the removed metrics
+		TreeMap<Integer, GlyphMetrics> metricsByOffset= new TreeMap<>();
+		int charCount= text.getCharCount();
+		for (LineContentAnnotation ann : metricsToRemove) {
+			int offset= ann.getPosition().getOffset();
+			if (ann.getAppliedMetrics() != null && offset < charCount) {
+				metricsByOffset.put(offset, null);
+			}
+			ann.setAppliedMetrics(null);
+		}
+		for (LineContentAnnotation ann : metricsToAdd) {
+			int offset= ann.getPosition().getOffset();
+			if (offset < charCount) {
+				GlyphMetrics metrics= ann.createMetrics();
+				if (metrics.equals(ann.getAppliedMetrics())) {
+					// the metrics of the annotation have not changed
+					continue;
+				}
+				metricsByOffset.put(offset, metrics);
+				ann.setAppliedMetrics(metrics);
+			}
+		}
+		if (metricsByOffset.isEmpty()) {
+			return;
+		}
+		text.setRedraw(false);
+		try {
+			Integer runStart= null;
+			Integer runEnd= null;
+			for (Integer offset : metricsByOffset.keySet()) {
+				if (runEnd != null && offset.intValue() != runEnd.intValue() + 1) {
+					replaceMetrics(text, metricsByOffset.subMap(runStart, true, runEnd, true));
+					runStart= null;
+				}
+				if (runStart == null) {
+					runStart= offset;
+				}
+				runEnd= offset;
+			}
+			replaceMetrics(text, metricsByOffset.subMap(runStart, true, runEnd, true));
+		} finally {
+			text.setRedraw(true);
+		}
+	}
+
+	/**
+	 * Replace the style ranges of the given run of contiguous offsets with the given metrics. The
+	 * other styles of the style ranges are kept.
+	 *
+	 * @param text the styled text
+	 * @param metricsByOffset the metrics of a run of contiguous offsets, <code>null</code> to
+	 *            remove the metrics
+	 */
+	private static void replaceMetrics(StyledText text, SortedMap<Integer, GlyphMetrics> metricsByOffset) {
+		int start= metricsByOffset.firstKey().intValue();
+		int length= metricsByOffset.lastKey().intValue() + 1 - start;
+		StyleRange[] existingRanges= text.getStyleRanges(start, length, true);
+		List<StyleRange> ranges= new ArrayList<>(existingRanges.length + metricsByOffset.size() * 2);
+		Iterator<Entry<Integer, GlyphMetrics>> iter= metricsByOffset.entrySet().iterator();
+		Entry<Integer, GlyphMetrics> entry= iter.next();
+		for (StyleRange existingRange : existingRanges) {
+			// metrics located before the existing range
+			while (entry != null && entry.getKey().intValue() < existingRange.start) {
+				addMetrics(ranges, entry.getKey().intValue(), entry.getValue(), null);
+				entry= iter.hasNext() ? iter.next() : null;
+			}
+			// metrics located inside the existing range: split it
+			int offset= existingRange.start;
+			int end= existingRange.start + existingRange.length;
+			while (entry != null && entry.getKey().intValue() < end) {
+				int metricsOffset= entry.getKey().intValue();
+				if (metricsOffset > offset) {
+					ranges.add(copy(existingRange, offset, metricsOffset - offset));
+				}
+				addMetrics(ranges, metricsOffset, entry.getValue(), existingRange);
+				offset= metricsOffset + 1;
+				entry= iter.hasNext() ? iter.next() : null;
+			}
+			if (offset < end) {
+				ranges.add(copy(existingRange, offset, end - offset));
+			}
+		}
+		// metrics located after the last existing range
+		while (entry != null) {
+			addMetrics(ranges, entry.getKey().intValue(), entry.getValue(), null);
+			entry= iter.hasNext() ? iter.next() : null;
+		}
+		text.replaceStyleRanges(start, length, ranges.toArray(new StyleRange[ranges.size()]));
+	}
+
+	/**
+	 * Add to the given style ranges the style range of one character with the given metrics.
+	 *
+	 * @param ranges the style ranges
+	 * @param offset the offset of the character
+	 * @param metrics the metrics to set, or <code>null</code> to remove the metrics
+	 * @param existingRange the existing style range of the character, or <code>null</code> if none
+	 */
+	private static void addMetrics(List<StyleRange> ranges, int offset, GlyphMetrics metrics,
+			StyleRange existingRange) {
+		if (metrics == null && existingRange == null) {
+			// None style to remove
+			return;
 		}
+		StyleRange s= existingRange != null ? copy(existingRange, offset, 1) : new StyleRange();
+		s.start= offset;
+		s.length= 1;
+		s.metrics= metrics;
+		ranges.add(s);
+	}
+
+	/**
+	 * Returns a copy of the given style range with the given start and length.
+	 *
+	 * @param range the style range to copy
+	 * @param start the start of the copy
+	 * @param length the length of the copy
+	 * @return a copy of the given style range with the given start and length.
+	 */
+	private static StyleRange copy(StyleRange range, int start, int length) {
+		StyleRange s= (StyleRange) range.clone();
+		s.start= start;
+		s.length= length;
+		return s;
+	}
+
+	/**
+	 * Returns true if the given annotation, which is not updated, must be removed because it is
+	 * located in the given region or because its position is deleted, and false otherwise.
+	 *
+	 * @param annotation the inlined annotation
+	 * @param region the region
+	 * @return true if the given annotation must be removed and false otherwise.
+	 */
+	private static boolean isRemovable(AbstractInlinedAnnotation annotation, IRegion region) {
+		Position position= annotation.getPosition();
+		return position.isDeleted() || (position.getOffset() >= region.getOffset()
+				&& position.getOffset() <= region.getOffset() + region.getLength());
+	}
+
+	/**
+	 * Returns the current inlined annotations.
+	 *
+	 * @return the current inlined annotations.
+	 */
+	public Set<AbstractInlinedAnnotation> getInlinedAnnotations() {
+		Set<AbstractInlinedAnnotation> annotations= fInlinedAnnotations;
+		return annotations != null ? Collections.unmodifiableSet(annotations) : Collections.emptySet();
 	}
 
 	/**
@@ -212,19 +687,52 @@ public class InlinedAnnotationSupport implements StyledTextLineSpacingProvider {
 	 */
 	@SuppressWarnings("unchecked")
 	public <T extends AbstractInlinedAnnotation> T findExistingAnnotation(Position pos) {
-		if (fInlinedAnnotations == null) {
+		InlinedAnnotationIndex index= fIndex;
+		IDocument document= fViewer != null ? fViewer.getDocument() : null;
+		if (index == null || document == null) {
 			return null;
 		}
-		for (AbstractInlinedAnnotation ann : fInlinedAnnotations) {
-			if (ann.getPosition().offset == pos.offset) {
-				try {
-					return (T) ann;
-				} catch (ClassCastException e) {
-					// Do nothing
-				}
-			}
+		try {
+			return (T) index.find(document, pos.offset);
+		} catch (ClassCastException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Returns the existing inlined annotations whose offset is located in the given range (end
+	 * inclusive), sorted by offset.
+	 *
+	 * @param offset the start offset of the range
+	 * @param length the length of the range
+	 * @return the existing inlined annotations whose offset is located in the given range.
+	 */
+	public List<AbstractInlinedAnnotation> findExistingAnnotations(int offset, int length) {
+		InlinedAnnotationIndex index= fIndex;
+		IDocument document= fViewer != null ? fViewer.getDocument() : null;
+		if (index == null || document == null) {
+			return Collections.emptyList();
+		}
+		return index.find(document, offset, length);
+	}
+
+	/**
+	 * Returns the existing inlined annotations located in the given line, sorted by offset.
+	 *
+	 * @param lineNumber the line number (0-based)
+	 * @return the existing inlined annotations located in the given line.
+	 */
+	public List<AbstractInlinedAnnotation> findExistingAnnotationsAtLine(int lineNumber) {
+		IDocument document= fViewer != null ? fViewer.getDocument() : null;
+		if (document == null) {
+			return Collections.emptyList();
+		}
+		try {
+			IRegion line= document.getLineInformation(lineNumber);
+			return findExistingAnnotations(line.getOffset(), line.getLength());
+		} catch (BadLocationException e) {
+			return Collections.emptyList();
 		}
-		return null;
 	}
 
 	/**
@@ -242,38 +750,54 @@ public class InlinedAnnotationSupport implements StyledTextLineSpacingProvider {
 		return annotationModel;
 	}
 
-	/**
-	 * Remove the inlined annotations.
-	 */
-	private void removeInlinedAnnotations() {
-
-		IAnnotationModel annotationModel= fViewer.getAnnotationModel();
-		if (annotationModel == null || fInlinedAnnotations == null)
-			return;
-
-		synchronized (getLockObject(annotationModel)) {
-			if (annotationModel instanceof IAnnotationModelExtension) {
-				((IAnnotationModelExtension) annotationModel).replaceAnnotations(
-						fInlinedAnnotations.toArray(new Annotation[fInlinedAnnotations.size()]), null);
-			} else {
-				for (AbstractInlinedAnnotation annotation : fInlinedAnnotations)
-					annotationModel.removeAnnotation(annotation);
-			}
-			fInlinedAnnotations= null;
-		}
-	}
-
 	/**
 	 * Returns the line spacing from the given line index with the codemining annotations height and
 	 * null otherwise.
+	 * <p>
+	 * This method is called for each line which is laid out by the {@link StyledText}, so the line
+	 * header annotations are looked up in a table which is rebuilt only when the annotations are
+	 * updated. When a document change modifies the lines of the document, the table is updated
+	 * with the changed lines only.
+	 * </p>
 	 */
 	@SuppressWarnings("boxing")
 	@Override
 	public Integer getLineSpacing(int lineIndex) {
-		AbstractInlinedAnnotation annotation= getInlinedAnnotationAtLine(fViewer, lineIndex);
-		return (annotation instanceof LineHeaderAnnotation)
-				? ((LineHeaderAnnotation) annotation).getHeight()
-				: null;
+		InlinedAnnotationLineSpacing lineSpacing= getLineSpacingTable();
+		LineHeaderAnnotation annotation= lineSpacing != null ? lineSpacing.get(lineIndex) : null;
+		return annotation != null ? annotation.getHeight() : null;
+	}
+
+	/**
+	 * Returns the table of the line header annotations by line index and rebuild it if needed, or
+	 * <code>null</code> if there are none inlined annotations.
+	 *
+	 * @return the table of the line header annotations by line index, or <code>null</code>.
+	 */
+	private InlinedAnnotationLineSpacing getLineSpacingTable() {
+		InlinedAnnotationLineSpacing lineSpacing= fLineSpacing;
+		if (lineSpacing != null) {
+			return lineSpacing;
+		}
+		InlinedAnnotationIndex index= fIndex;
+		IDocument document= fViewer != null ? fViewer.getDocument() : null;
+		if (index == null || document == null) {
+			return null;
+		}
+		LineChange change= fLineChange;
+		if (fLinesChanging && change != null && change.isApplied(document, index)) {
+			// the document has been changed but the document listeners are not notified yet.
+			lineSpacing= change.apply(document);
+			if (lineSpacing != null) {
+				return lineSpacing;
+			}
+		}
+		lineSpacing= new InlinedAnnotationLineSpacing(document, index.find(document, 0, document.getLength()));
+		if (fIndex == index && !fLinesChanging) {
+			// the annotations and the lines have not been updated while the table was built.
+			fLineSpacing= lineSpacing;
+		}
+		return lineSpacing;
 	}
 
 	/**
@@ -319,6 +843,40 @@ public class InlinedAnnotationSupport implements StyledTextLineSpacingProvider {
 		return null;
 	}
 
+	/**
+	 * Returns the modification stamp of the given document, or
+	 * {@link IDocumentExtension4#UNKNOWN_MODIFICATION_STAMP} if it is unknown.
+	 *
+	 * @param document the document
+	 * @return the modification stamp of the given document.
+	 */
+	private static long getModificationStamp(IDocument document) {
+		return document instanceof IDocumentExtension4 ? ((IDocumentExtension4) document).getModificationStamp()
+				: IDocumentExtension4.UNKNOWN_MODIFICATION_STAMP;
+	}
+
+	/**
+	 * Returns the model region of the visible lines of the given viewer. The top and bottom index
+	 * offsets of the viewer are widget offsets, which differ from the model offsets when the
+	 * viewer has a visible region or folded regions.
+	 *
+	 * @param viewer the text viewer
+	 * @return the model region of the visible lines of the given viewer, or <code>null</code> if
+	 *         it cannot be computed.
+	 */
+	static IRegion getVisibleModelRegion(ITextViewer viewer) {
+		int start= viewer.getTopIndexStartOffset();
+		int end= viewer.getBottomIndexEndOffset();
+		if (start < 0 || end < start) {
+			return null;
+		}
+		if (viewer instanceof ITextViewerExtension5) {
+			return ((ITextViewerExtension5) viewer).widgetRange2ModelRange(new Region(start, end - start));
+		}
+		IRegion visibleRegion= viewer.getVisibleRegion();
+		return new Region(visibleRegion.getOffset() + start, end - start);
+	}
+
 	/**
 	 * Execute UI {@link StyledText} function which requires UI Thread.
 	 *
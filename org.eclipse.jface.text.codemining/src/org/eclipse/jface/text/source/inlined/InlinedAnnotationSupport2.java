@@ -13,13 +13,13 @@ package org.eclipse.jface.text.source.inlined;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.function.Consumer;
-import java.util.stream.Collectors;
 
 import org.eclipse.core.runtime.Assert;
 import org.eclipse.jface.resource.JFaceResources;
@@ -27,6 +27,7 @@ import org.eclipse.jface.text.BadLocationException;
 import org.eclipse.jface.text.IDocument;
 import org.eclipse.jface.text.IRegion;
 import org.eclipse.jface.text.ISynchronizable;
+import org.eclipse.jface.text.IViewportListener;
 import org.eclipse.jface.text.Position;
 import org.eclipse.jface.text.source.Annotation;
 import org.eclipse.jface.text.source.AnnotationPainter;
@@ -73,30 +74,28 @@ public class InlinedAnnotationSupport2 implements StyledTextLineSpacingProvider
 				return;
 
 			String property = event.getProperty();
-			// FIXME: filter property name with
-			// AbstractTextEditor#getFontPropertyPreferenceKey which is protected
+			if (fFontPropertyKey != null && !fFontPropertyKey.equals(property)) {
+				// The font of the editor has not changed
+				return;
+			}
 			StyledText styledText = fViewer.getTextWidget();
-			// Font changes was done (ex: zoom), GlyphMetrics width must be recomputed
-
-			List<AbstractInlinedAnnotation> lineContentAnnotations = fInlinedAnnotations.stream()
-					.filter(ann -> ann instanceof LineContentAnnotation).collect(Collectors.toList());
-			if (lineContentAnnotations.isEmpty()) {
+			if (styledText == null || styledText.isDisposed()) {
 				return;
 			}
-			try {
-				styledText.setRedraw(false);
-				for (AbstractInlinedAnnotation ann : fInlinedAnnotations) {
-					Position position = ann.getPosition();
-					StyleRange style = styledText.getStyleRangeAtOffset(position.getOffset());
-					if (style != null && style.metrics != null) {
-						// Update the width metrics
-						style.metrics.width = ((LineContentAnnotation) ann).getWidth();
-						//styledText.setStyleRange(style);
-					}
+			// Font changes was done (ex: zoom), the cached text metrics are obsolete
+			FontMetricsCache.invalidate();
+			// GlyphMetrics width must be recomputed: mark all line content annotations as dirty,
+			// the visible annotations are updated now and the others when they are scrolled into view.
+			for (AbstractInlinedAnnotation ann : fInlinedAnnotations) {
+				if (ann instanceof LineContentAnnotation) {
+					fDirtyAnnotations.add((LineContentAnnotation) ann);
 				}
-			} finally {
-				styledText.setRedraw(true);
 			}
+			if (fDirtyAnnotations.isEmpty()) {
+				return;
+			}
+			// Wait for the editor to apply the new font to the styled text.
+			styledText.getDisplay().asyncExec(() -> updateVisibleDirtyAnnotations());
 		}
 	}
 
@@ -121,6 +120,24 @@ public class InlinedAnnotationSupport2 implements StyledTextLineSpacingProvider
 	 */
 	private IPropertyChangeListener fFontPropertyChangeListener = new FontPropertyChangeListener();
 
+	/**
+	 * The font property key of the editor, or <code>null</code> (the default) to
+	 * update the annotations for any font change.
+	 */
+	private String fFontPropertyKey;
+
+	/**
+	 * The line content annotations whose GlyphMetrics width must be recomputed when
+	 * they are scrolled into view. This set is accessed in the UI Thread.
+	 */
+	private final Set<LineContentAnnotation> fDirtyAnnotations = new HashSet<>();
+
+	/**
+	 * Viewport listener used to recompute width of GlyphMetrics of the dirty
+	 * annotations which are scrolled into view.
+	 */
+	private IViewportListener fViewportListener = verticalOffset -> updateVisibleDirtyAnnotations();
+
 	/**
 	 * Install the inlined annotation support for the given viewer.
 	 *
@@ -142,6 +159,56 @@ public class InlinedAnnotationSupport2 implements StyledTextLineSpacingProvider
 		setColor(text.getDisplay().getSystemColor(SWT.COLOR_DARK_GRAY));
 		text.setLineSpacingProvider(this);
 		JFaceResources.getFontRegistry().addListener(fFontPropertyChangeListener);
+		fViewer.addViewportListener(fViewportListener);
+	}
+
+	/**
+	 * Set the font property key of the editor (see
+	 * AbstractTextEditor#getFontPropertyPreferenceKey) to update the annotations
+	 * only when the font of the editor changes.
+	 *
+	 * @param fontPropertyKey
+	 *            the font property key of the editor, or <code>null</code> to
+	 *            update the annotations for any font change.
+	 */
+	public void setFontPropertyKey(String fontPropertyKey) {
+		fFontPropertyKey = fontPropertyKey;
+	}
+
+	/**
+	 * Recompute the GlyphMetrics width of the dirty line content annotations which
+	 * are visible, with one update of the style ranges.
+	 */
+	private void updateVisibleDirtyAnnotations() {
+		if (fViewer == null || fDirtyAnnotations.isEmpty()) {
+			return;
+		}
+		StyledText styledText = fViewer.getTextWidget();
+		if (styledText == null || styledText.isDisposed()) {
+			return;
+		}
+		// the positions of the annotations are model offsets.
+		IRegion visibleRegion = InlinedAnnotationSupport.getVisibleModelRegion(fViewer);
+		if (visibleRegion == null) {
+			return;
+		}
+		int start = visibleRegion.getOffset();
+		int end = start + visibleRegion.getLength();
+		List<LineContentAnnotation> visibleAnnotations = new ArrayList<>();
+		for (Iterator<LineContentAnnotation> iter = fDirtyAnnotations.iterator(); iter.hasNext();) {
+			LineContentAnnotation ann = iter.next();
+			Position position = ann.getPosition();
+			if (ann.isMarkedDeleted() || position.isDeleted()) {
+				// The annotation has been removed, its metrics are removed too
+				iter.remove();
+			} else if (position.getOffset() >= start && position.getOffset() <= end) {
+				visibleAnnotations.add(ann);
+				iter.remove();
+			}
+		}
+		if (!visibleAnnotations.isEmpty()) {
+			InlinedAnnotationSupport.updateMetrics(styledText, visibleAnnotations, Collections.emptyList());
+		}
 	}
 
 	/**
@@ -166,6 +233,10 @@ public class InlinedAnnotationSupport2 implements StyledTextLineSpacingProvider
 	 * Unisntall the inlined annotation support
 	 */
 	public void uninstall() {
+		if (fViewer != null) {
+			fViewer.removeViewportListener(fViewportListener);
+		}
+		fDirtyAnnotations.clear();
 		fViewer = null;
 		fPainter = null;
 		JFaceResources.getFontRegistry().removeListener(fFontPropertyChangeListener);
@@ -11,8 +11,6 @@
 package org.eclipse.jface.text.source.inlined;
 
 import org.eclipse.swt.custom.StyledText;
-import org.eclipse.swt.graphics.FontMetrics;
-import org.eclipse.swt.graphics.GC;
 import org.eclipse.swt.graphics.GlyphMetrics;
 
 import org.eclipse.jface.text.Position;
@@ -25,6 +23,12 @@ import org.eclipse.jface.text.Position;
  */
 public class LineContentAnnotation extends AbstractInlinedAnnotation {
 
+	/**
+	 * The metrics which are applied to the style range of the annotation, or <code>null</code> if
+	 * none.
+	 */
+	private GlyphMetrics appliedMetrics;
+
 	/**
 	 * Line content annotation constructor.
 	 *
@@ -46,6 +50,27 @@ public class LineContentAnnotation extends AbstractInlinedAnnotation {
 		return new GlyphMetrics(0, 0, getWidth());
 	}
 
+	/**
+	 * Returns the metrics which are applied to the style range of the annotation, or
+	 * <code>null</code> if none.
+	 *
+	 * @return the metrics which are applied to the style range of the annotation, or
+	 *         <code>null</code> if none.
+	 */
+	GlyphMetrics getAppliedMetrics() {
+		return appliedMetrics;
+	}
+
+	/**
+	 * Set the metrics which are applied to the style range of the annotation.
+	 *
+	 * @param appliedMetrics the metrics which are applied to the style range of the annotation, or
+	 *            <code>null</code> if none.
+	 */
+	void setAppliedMetrics(GlyphMetrics appliedMetrics) {
+		this.appliedMetrics= appliedMetrics;
+	}
+
 	/**
 	 * Returns the annotation width. By default it computes the well width for the text annotation.
 	 *
@@ -58,10 +83,6 @@ public class LineContentAnnotation extends AbstractInlinedAnnotation {
 		}
 		int nbChars= text.length() + 1;
 		StyledText styledText= super.getTextWidget();
-		GC gc= new GC(styledText);
-		FontMetrics fontMetrics= gc.getFontMetrics();
-		int width= nbChars * fontMetrics.getAverageCharWidth();
-		gc.dispose();
-		return width;
+		return nbChars * FontMetricsCache.getAverageCharWidth(styledText.getFont());
 	}
 }
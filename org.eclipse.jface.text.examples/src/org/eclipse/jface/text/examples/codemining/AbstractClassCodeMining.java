@@ -29,6 +29,11 @@ public abstract class AbstractClassCodeMining extends AbstractCodeMining {
 		return className;
 	}
 
+	@Override
+	public Object getKey() {
+		return className;
+	}
+
 	public static String getLineText(IDocument document, int line) {
 		try {
 			int lo = document.getLineOffset(line);
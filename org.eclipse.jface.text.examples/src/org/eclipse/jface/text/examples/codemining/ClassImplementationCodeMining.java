@@ -34,12 +34,14 @@ public class ClassImplementationCodeMining extends AbstractClassCodeMining {
 			int lineCount = document.getNumberOfLines();
 			for (int i = 0; i < lineCount; i++) {
 				// check if request was canceled.
-				monitor.isCanceled();
+				if (monitor.isCanceled()) {
+					return;
+				}
 				String line = getLineText(document, i);
 				refCount += line.contains("implements " + className) ? 1 : 0;
 			}
 			super.setLabel(refCount + " implementation");
-		});
+		}, getExecutor());
 	}
 
 }
@@ -32,12 +32,14 @@ public class ClassImplementationsCodeMiningProvider extends AbstractCodeMiningPr
 			int lineCount = document.getNumberOfLines();
 			for (int i = 0; i < lineCount; i++) {
 				// check if request was canceled.
-				monitor.isCanceled();
+				if (monitor.isCanceled()) {
+					return lenses;
+				}
 				updateContentMining(i, document, "class ", lenses);
 				updateContentMining(i, document, "interface ", lenses);
 			}
 			return lenses;
-		});
+		}, getExecutor());
 	}
 
 	private void updateContentMining(int lineIndex, IDocument document, String token, List<ICodeMining> lenses) {
@@ -10,7 +10,6 @@
  */
 package org.eclipse.jface.text.examples.codemining;
 
-import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
 
 import org.eclipse.core.runtime.IProgressMonitor;
@@ -21,47 +20,91 @@ import org.eclipse.jface.text.codemining.ICodeMiningProvider;
 
 public class ClassReferenceCodeMining extends AbstractClassCodeMining {
 
-	private Object lock = new Object();
+	private static final Object lock = new Object();
+
+	private int referencesStamp;
 
 	public ClassReferenceCodeMining(String className, int afterLineNumber, IDocument document, ICodeMiningProvider provider)
 			throws BadLocationException {
 		super(className, afterLineNumber, document, provider);
 	}
 
+	/**
+	 * Returns the hash of the document lines which can reference a class when this mining was
+	 * created.
+	 *
+	 * @return the hash of the document lines which can reference a class.
+	 */
+	int getReferencesStamp() {
+		return referencesStamp;
+	}
+
+	void setReferencesStamp(int referencesStamp) {
+		this.referencesStamp = referencesStamp;
+	}
+
 	@Override
 	protected CompletableFuture<Void> doResolve(ITextViewer viewer, IProgressMonitor monitor) {
 		return CompletableFuture.runAsync(() -> {
 			IDocument document = viewer.getDocument();
 			String className = super.getClassName();
-			try {
-				int wait = Integer.parseInt(className);
-				try {
-					for (int i = 0; i < wait; i++) {
-						monitor.isCanceled();
-						synchronized (lock) {
-							lock.wait(1000);
-						}
-					}
-				} catch (InterruptedException e) {
-					Thread.currentThread().interrupt();
-				}
-			} catch (NumberFormatException e) {
-
-			} catch (CancellationException e) {
-				e.printStackTrace();
-				throw e;
+			if (!emulateResolveDelay(getResolveDelay(className), monitor)) {
+				return;
 			}
 
 			int refCount = 0;
 			int lineCount = document.getNumberOfLines();
 			for (int i = 0; i < lineCount; i++) {
 				// check if request was canceled.
-				monitor.isCanceled();
+				if (monitor.isCanceled()) {
+					return;
+				}
 				String line = getLineText(document, i);
 				refCount += line.contains("new " + className) ? 1 : 0;
 			}
 			super.setLabel(refCount + " references");
-		});
+		}, getExecutor());
+	}
+
+	/**
+	 * Returns the emulated resolve delay of the given class: a class named with a
+	 * number N waits N seconds.
+	 *
+	 * @param className
+	 *            the class name
+	 * @return the emulated resolve delay (in seconds) of the given class.
+	 */
+	static int getResolveDelay(String className) {
+		try {
+			return Integer.parseInt(className);
+		} catch (NumberFormatException e) {
+			return 0;
+		}
+	}
+
+	/**
+	 * Emulate a slow resolve by waiting the given delay.
+	 *
+	 * @param wait
+	 *            the delay (in seconds) to wait
+	 * @param monitor
+	 *            the progress monitor
+	 * @return false if the request was canceled while waiting and true otherwise.
+	 */
+	static boolean emulateResolveDelay(int wait, IProgressMonitor monitor) {
+		try {
+			for (int i = 0; i < wait; i++) {
+				if (monitor.isCanceled()) {
+					return false;
+				}
+				synchronized (lock) {
+					lock.wait(1000);
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		return true;
 	}
 
 }
@@ -11,7 +11,9 @@
 package org.eclipse.jface.text.examples.codemining;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 
 import org.eclipse.core.runtime.IProgressMonitor;
@@ -28,12 +30,18 @@ public class ClassReferenceCodeMiningProvider extends AbstractCodeMiningProvider
 			IProgressMonitor monitor) {
 		return CompletableFuture.supplyAsync(() -> {
 			IDocument document = viewer.getDocument();
-			List<ICodeMining> lenses = new ArrayList<>();
+			List<ClassReferenceCodeMining> lenses = new ArrayList<>();
+			int referencesStamp = 0;
 			int lineCount = document.getNumberOfLines();
 			for (int i = 0; i < lineCount; i++) {
 				// check if request was canceled.
-				monitor.isCanceled();
+				if (monitor.isCanceled()) {
+					return lenses;
+				}
 				String line = AbstractClassCodeMining.getLineText(document, i).trim();
+				if (line.contains("new ")) {
+					referencesStamp = 31 * referencesStamp + line.hashCode();
+				}
 				int index = line.indexOf("class ");
 				if (index == 0) {
 					String className = line.substring(index + "class ".length(), line.length()).trim();
@@ -46,8 +54,59 @@ public class ClassReferenceCodeMiningProvider extends AbstractCodeMiningProvider
 					}
 				}
 			}
+			for (ClassReferenceCodeMining lens : lenses) {
+				lens.setReferencesStamp(referencesStamp);
+			}
 			return lenses;
-		});
+		}, getExecutor());
+	}
+
+	@Override
+	public boolean isResolvedContentValid(ICodeMining previous, ICodeMining mining) {
+		// the references count is the same while the lines which reference a class don't change.
+		return ((ClassReferenceCodeMining) previous).getReferencesStamp() == ((ClassReferenceCodeMining) mining)
+				.getReferencesStamp();
+	}
+
+	@Override
+	public CompletableFuture<Void> resolveCodeMinings(ITextViewer viewer, List<ICodeMining> minings,
+			IProgressMonitor monitor) {
+		return CompletableFuture.runAsync(() -> {
+			// count the references of all classes with one pass over the document.
+			Map<String, Integer> refCounts = new HashMap<>();
+			for (ICodeMining mining : minings) {
+				refCounts.put(((ClassReferenceCodeMining) mining).getClassName(), 0);
+			}
+			// the batch is resolved when its slowest class is resolved.
+			int wait = 0;
+			for (String className : refCounts.keySet()) {
+				wait = Math.max(wait, ClassReferenceCodeMining.getResolveDelay(className));
+			}
+			if (!ClassReferenceCodeMining.emulateResolveDelay(wait, monitor)) {
+				return;
+			}
+			IDocument document = viewer.getDocument();
+			int lineCount = document.getNumberOfLines();
+			for (int i = 0; i < lineCount; i++) {
+				// check if request was canceled.
+				if (monitor.isCanceled()) {
+					return;
+				}
+				String line = AbstractClassCodeMining.getLineText(document, i);
+				if (!line.contains("new ")) {
+					continue;
+				}
+				for (Map.Entry<String, Integer> refCount : refCounts.entrySet()) {
+					if (line.contains("new " + refCount.getKey())) {
+						refCount.setValue(refCount.getValue() + 1);
+					}
+				}
+			}
+			for (ICodeMining mining : minings) {
+				ClassReferenceCodeMining classMining = (ClassReferenceCodeMining) mining;
+				classMining.setLabel(refCounts.get(classMining.getClassName()) + " references");
+			}
+		}, getExecutor());
 	}
 
 }
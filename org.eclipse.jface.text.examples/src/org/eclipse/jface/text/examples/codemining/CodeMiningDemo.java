@@ -14,15 +14,11 @@ import org.eclipse.jface.internal.text.codemining.CodeMiningManager;
 import org.eclipse.jface.text.Document;
 import org.eclipse.jface.text.IDocument;
 import org.eclipse.jface.text.IRegion;
-import org.eclipse.jface.text.ITextViewerExtension2;
 import org.eclipse.jface.text.codemining.ICodeMiningProvider;
 import org.eclipse.jface.text.reconciler.DirtyRegion;
 import org.eclipse.jface.text.reconciler.IReconcilingStrategy;
 import org.eclipse.jface.text.reconciler.MonoReconciler;
-import org.eclipse.jface.text.source.Annotation;
 import org.eclipse.jface.text.source.AnnotationModel;
-import org.eclipse.jface.text.source.AnnotationPainter;
-import org.eclipse.jface.text.source.IAnnotationAccess;
 import org.eclipse.jface.text.source.ISourceViewer;
 //import org.eclipse.jface.text.source.ISourceViewerExtension5;
 import org.eclipse.jface.text.source.SourceViewer;
@@ -51,17 +47,17 @@ public class CodeMiningDemo {
 						+ "// Name class with a number N to emulate Nms before resolving the references CodeMining \n\n"
 						+ "class A\n" + "new A\n" + "new A\n\n" + "class 5\n" + "new 5\n" + "new 5\n" + "new 5"),
 				new AnnotationModel());
-		// Add AnnotationPainter (required by CodeMining)
-		AnnotationPainter painter = createAnnotationPainter(sourceViewer);
-		// Install Inlined annotation support
+		// Install Inlined annotation support, which draws the code minings with its own paint
+		// listener (see InlinedAnnotationDemo to draw them with an AnnotationPainter)
 		InlinedAnnotationSupport support = new InlinedAnnotationSupport();
-		support.install(sourceViewer, painter);
+		support.install(sourceViewer);
 
 		// Create manager
 		CodeMiningManager manager = new CodeMiningManager(sourceViewer, support, new ICodeMiningProvider[] { new ClassReferenceCodeMiningProvider(),
 				new ClassImplementationsCodeMiningProvider() });
 
-		// Execute manager in a reconciler
+		// Execute manager in an incremental reconciler: only the code minings of the dirty lines
+		// are collected again
 		MonoReconciler reconciler = new MonoReconciler(new IReconcilingStrategy() {
 
 			@Override
@@ -71,14 +67,14 @@ public class CodeMiningDemo {
 
 			@Override
 			public void reconcile(DirtyRegion dirtyRegion, IRegion subRegion) {
-
+				manager.run(dirtyRegion);
 			}
 
 			@Override
 			public void reconcile(IRegion partition) {
 				manager.run();
 			}
-		}, false);
+		}, true);
 		//reconciler.setDelay(1);
 		reconciler.install(sourceViewer);
 
@@ -91,27 +87,4 @@ public class CodeMiningDemo {
 		display.dispose();
 	}
 
-	private static AnnotationPainter createAnnotationPainter(ISourceViewer viewer) {
-		IAnnotationAccess annotationAccess = new IAnnotationAccess() {
-			@Override
-			public Object getType(Annotation annotation) {
-				return annotation.getType();
-			}
-
-			@Override
-			public boolean isMultiLine(Annotation annotation) {
-				return true;
-			}
-
-			@Override
-			public boolean isTemporary(Annotation annotation) {
-				return true;
-			}
-
-		};
-		AnnotationPainter painter = new AnnotationPainter(viewer, annotationAccess);
-		((ITextViewerExtension2) viewer).addPainter(painter);
-		return painter;
-	}
-
 }
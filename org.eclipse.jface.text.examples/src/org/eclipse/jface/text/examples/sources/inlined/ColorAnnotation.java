@@ -11,9 +11,11 @@
 package org.eclipse.jface.text.examples.sources.inlined;
 
 import org.eclipse.jface.text.Position;
+import org.eclipse.jface.text.source.inlined.FontMetricsCache;
 import org.eclipse.jface.text.source.inlined.LineContentAnnotation;
 import org.eclipse.swt.custom.StyledText;
 import org.eclipse.swt.graphics.Color;
+import org.eclipse.swt.graphics.Font;
 import org.eclipse.swt.graphics.FontMetrics;
 import org.eclipse.swt.graphics.GC;
 import org.eclipse.swt.graphics.Rectangle;
@@ -57,7 +59,20 @@ public class ColorAnnotation extends LineContentAnnotation {
 	 * @return the colorized square size.
 	 */
 	public static int getSquareSize(FontMetrics fontMetrics) {
-		return fontMetrics.getHeight() - 2 * fontMetrics.getDescent();
+		return getSquareSize(fontMetrics.getHeight(), fontMetrics.getDescent());
+	}
+
+	/**
+	 * Returns the colorized square size.
+	 * 
+	 * @param height
+	 *            the height of the font
+	 * @param descent
+	 *            the descent of the font
+	 * @return the colorized square size.
+	 */
+	private static int getSquareSize(int height, int descent) {
+		return height - 2 * descent;
 	}
 
 	/**
@@ -67,11 +82,9 @@ public class ColorAnnotation extends LineContentAnnotation {
 	 * @return the width of square
 	 */
 	private static int getSquareWidth(StyledText styledText) {
-		GC gc = new GC(styledText);
-		FontMetrics fontMetrics = gc.getFontMetrics();
+		Font font = styledText.getFont();
 		// width = 2 spaces + size width of square
-		int width = 2 * fontMetrics.getAverageCharWidth() + getSquareSize(fontMetrics);
-		gc.dispose();
-		return width;
+		return 2 * FontMetricsCache.getAverageCharWidth(font)
+				+ getSquareSize(FontMetricsCache.getHeight(font), FontMetricsCache.getDescent(font));
 	}
 }
@@ -12,6 +12,7 @@ import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Platform;
 import org.eclipse.core.runtime.SafeRunner;
 import org.eclipse.core.runtime.Status;
+import org.eclipse.jface.text.codemining.CodeMiningProviderPolicy;
 import org.eclipse.jface.text.codemining.ICodeMiningProvider;
 import org.eclipse.jface.util.SafeRunnable;
 import org.eclipse.ui.internal.texteditor.NLSUtility;
@@ -35,10 +36,16 @@ public final class CodeMiningProviderDescriptor {
 	private static final String NAME_ATTRIBUTE= "name"; //$NON-NLS-1$
 	private static final String CLASS_ATTRIBUTE= "class"; //$NON-NLS-1$
 	private static final String TARGET_ID_ATTRIBUTE= "targetId"; //$NON-NLS-1$
+	private static final String PROVIDE_TIMEOUT_ATTRIBUTE= "provideTimeout"; //$NON-NLS-1$
+	private static final String RESOLVE_TIMEOUT_ATTRIBUTE= "resolveTimeout"; //$NON-NLS-1$
+	private static final String FAILURE_THRESHOLD_ATTRIBUTE= "failureThreshold"; //$NON-NLS-1$
+	private static final String COOL_DOWN_ATTRIBUTE= "coolDown"; //$NON-NLS-1$
 	
 	private IConfigurationElement fElement;
 	private CodeMiningDescriptor[] codeMinigDescriptors;
 	private CodeMiningProviderTargetDescriptor fTarget;
+	private CodeMiningProviderPolicy fPolicy;
+	private volatile boolean fPolicyComputed;
 	//private CodeMiningProviderTargetDescriptor fTarget;
 
 
@@ -142,6 +149,47 @@ public final class CodeMiningProviderDescriptor {
 		return fElement.getAttribute(TARGET_ID_ATTRIBUTE);
 	}
 	
+	/**
+	 * Returns the deadlines and circuit breaker declared by the <code>provideTimeout</code>,
+	 * <code>resolveTimeout</code>, <code>failureThreshold</code> and <code>coolDown</code>
+	 * attributes. The policy is shared by all providers created with this descriptor.
+	 * <p>
+	 * The policy (or its absence) is computed once, since this method is called when the code
+	 * minings are painted.
+	 * </p>
+	 *
+	 * @return the deadlines and circuit breaker of the code mining provider, or <code>null</code>
+	 *         if no deadline is declared
+	 */
+	public CodeMiningProviderPolicy getPolicy() {
+		if (!fPolicyComputed) {
+			synchronized (this) {
+				if (!fPolicyComputed) {
+					long provideTimeout= getLongAttribute(PROVIDE_TIMEOUT_ATTRIBUTE, 0);
+					long resolveTimeout= getLongAttribute(RESOLVE_TIMEOUT_ATTRIBUTE, 0);
+					if (provideTimeout > 0 || resolveTimeout > 0) {
+						int failureThreshold= (int) getLongAttribute(FAILURE_THRESHOLD_ATTRIBUTE, CodeMiningProviderPolicy.DEFAULT_FAILURE_THRESHOLD);
+						long coolDown= getLongAttribute(COOL_DOWN_ATTRIBUTE, CodeMiningProviderPolicy.DEFAULT_COOL_DOWN);
+						fPolicy= new CodeMiningProviderPolicy(getId(), provideTimeout, resolveTimeout, Math.max(1, failureThreshold), coolDown);
+					}
+					fPolicyComputed= true;
+				}
+			}
+		}
+		return fPolicy;
+	}
+
+	private long getLongAttribute(String name, long defaultValue) {
+		String value= fElement.getAttribute(name);
+		if (value == null)
+			return defaultValue;
+		try {
+			return Long.parseLong(value.trim());
+		} catch (NumberFormatException e) {
+			return defaultValue;
+		}
+	}
+
 	@Override
 	public boolean equals(Object obj) {
 		if (obj == null || !obj.getClass().equals(this.getClass()) || getId() == null)
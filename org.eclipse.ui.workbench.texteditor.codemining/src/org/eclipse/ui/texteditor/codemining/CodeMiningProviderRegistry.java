@@ -13,6 +13,7 @@ package org.eclipse.ui.texteditor.codemining;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 import org.eclipse.core.runtime.Assert;
 import org.eclipse.core.runtime.CoreException;
@@ -21,6 +22,8 @@ import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.jface.preference.IPreferenceStore;
 import org.eclipse.jface.text.ITextViewer;
 import org.eclipse.jface.text.codemining.AbstractCodeMiningProvider;
+import org.eclipse.jface.text.codemining.CodeMiningExecutor;
+import org.eclipse.jface.text.codemining.CodeMiningProviderPolicy;
 import org.eclipse.jface.text.codemining.ICodeMining;
 import org.eclipse.jface.text.codemining.ICodeMiningProvider;
 
@@ -60,7 +63,8 @@ public class CodeMiningProviderRegistry {
 					fFailedDuringCreation = true;
 				}
 				if (fContext != null && fCodeMiningProvider instanceof AbstractCodeMiningProvider)
-					((AbstractCodeMiningProvider) fCodeMiningProvider).setContext(fContext);
+					((AbstractCodeMiningProvider) fCodeMiningProvider)
+							.setContext(createProviderContext(fContext, fCodeMiningProvider));
 			}
 			if (fCodeMiningProvider != null)
 				return fCodeMiningProvider.provideCodeMinings(viewer, monitor);
@@ -69,6 +73,11 @@ public class CodeMiningProviderRegistry {
 
 		}
 
+		@Override
+		public CodeMiningProviderPolicy getPolicy() {
+			return codeLensProviderDescriptor != null ? codeLensProviderDescriptor.getPolicy() : null;
+		}
+
 		private boolean isEnabled() {
 			return fIsEnabled;
 		}
@@ -77,6 +86,36 @@ public class CodeMiningProviderRegistry {
 			fContext = context;
 		}
 
+		/**
+		 * Returns the context of the given provider which adapts {@link Executor} to the
+		 * executor of the provider, {@link CodeMiningProviderPolicy} to the policy declared
+		 * by the descriptor and delegates the other adapters to the given context.
+		 *
+		 * @param context
+		 *            the context
+		 * @param provider
+		 *            the codelens provider
+		 * @return the context of the given provider.
+		 */
+		private IAdaptable createProviderContext(IAdaptable context, ICodeMiningProvider provider) {
+			return new IAdaptable() {
+
+				@Override
+				public <T> T getAdapter(Class<T> adapter) {
+					if (Executor.class.equals(adapter)) {
+						return adapter.cast(CodeMiningExecutor.getDefault().getExecutor(provider));
+					}
+					if (CodeMiningProviderPolicy.class.equals(adapter)) {
+						CodeMiningProviderPolicy policy = getPolicy();
+						if (policy != null) {
+							return adapter.cast(policy);
+						}
+					}
+					return context.getAdapter(adapter);
+				}
+			};
+		}
+
 		@Override
 		public void dispose() {
 			fCodeMiningProvider.dispose();